@@ -0,0 +1,88 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.ttc.tools.fbd;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Formats the destination directory of a file from its date, directly and
+ * through the DestinationResolver that Operation uses.
+ *
+ * @author Patrik Karlström
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Thread)
+public class DateFormatBenchmark {
+
+    private static final int DATE_COUNT = 1024;
+
+    @Param({"yyyy/MM", "yyyy/yyyy-MM-dd"})
+    private String datePattern;
+    private SimpleDateFormat mDateFormat;
+    private Date[] mDates;
+    private File mDestDir;
+    private DestinationResolver mDestinationResolver;
+    private int mIndex;
+
+    @Setup
+    public void setup() {
+        String tmpDir = System.getProperty("java.io.tmpdir");
+        Profile profile = Fixture.createProfile(Paths.get(tmpDir), Paths.get(tmpDir), DateSource.FILE_MODIFIED, datePattern);
+        mDateFormat = profile.getDateFormat();
+        mDestDir = profile.getDestDir();
+        profile.setDryRun(true);
+        mDestinationResolver = new DestinationResolver(profile, new OperationMetrics());
+        mDates = new Date[DATE_COUNT];
+
+        for (int i = 0; i < DATE_COUNT; i++) {
+            mDates[i] = new Date(946684800000L + TimeUnit.HOURS.toMillis(17L * i));
+        }
+    }
+
+    @Benchmark
+    public File format() {
+        Date date = mDates[mIndex++ & (DATE_COUNT - 1)];
+
+        return new File(mDestDir, mDateFormat.format(date));
+    }
+
+    @Benchmark
+    public File resolve() throws IOException {
+        Date date = mDates[mIndex++ & (DATE_COUNT - 1)];
+
+        return mDestinationResolver.resolve(date);
+    }
+}
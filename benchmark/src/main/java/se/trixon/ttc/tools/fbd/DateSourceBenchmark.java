@@ -0,0 +1,90 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.ttc.tools.fbd;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Resolves the date of one fixture file per invocation with
+ * {@link Operation#getDate(File)}, cycling through the tree.
+ *
+ * @author Patrik Karlström
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class DateSourceBenchmark {
+
+    @Param({"FILE_CREATED", "FILE_MODIFIED", "FILENAME_PATTERN", "EXIF_ORIGINAL"})
+    private DateSource dateSource;
+    @Param({"1"})
+    private int dirs;
+    @Param({"1000"})
+    private int filesPerDir;
+    @Param({"65536"})
+    private int fileSize;
+    private File[] mFiles;
+    private int mIndex;
+    private Operation mOperation;
+    private Path mRoot;
+
+    @Setup
+    public void setup() throws IOException {
+        mRoot = Files.createTempDirectory("fbd-date");
+        Path source = mRoot.resolve("source");
+        Fixture.create(source, dirs, filesPerDir, fileSize);
+        mOperation = new Operation(Fixture.SILENT_LISTENER, Fixture.createProfile(source, mRoot, dateSource, "yyyy/MM"));
+
+        try (Stream<Path> stream = Files.walk(source)) {
+            mFiles = stream.filter(Files::isRegularFile).map(Path::toFile).sorted().collect(Collectors.toList()).toArray(new File[0]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(mRoot.toFile());
+    }
+
+    @Benchmark
+    public Date getDate() throws Exception {
+        File file = mFiles[mIndex++ % mFiles.length];
+
+        return mOperation.getDate(file);
+    }
+}
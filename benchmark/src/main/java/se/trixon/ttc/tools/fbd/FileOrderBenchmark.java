@@ -0,0 +1,140 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.ttc.tools.fbd;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.trixon.ttc.tools.DirectoryScanner;
+
+/**
+ * Orders the files of a tree with each {@link FileOrder} and reads them
+ * all, with a cold page cache.
+ *
+ * The files are written in random order, so that name order and disk
+ * order differ. The page cache is dropped before every run, which needs
+ * root, without it the files are read from memory and only the cost of
+ * sorting is measured. Point java.io.tmpdir at the disk to measure.
+ *
+ * @author Patrik Karlström
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class FileOrderBenchmark {
+
+    private static final Path DROP_CACHES = Paths.get("/proc/sys/vm/drop_caches");
+
+    @Param({"20"})
+    private int dirs;
+    @Param({"NAME", "INODE", "LISTING"})
+    private FileOrder fileOrder;
+    @Param({"500"})
+    private int filesPerDir;
+    @Param({"65536"})
+    private int fileSize;
+    private final byte[] mBuffer = new byte[64 * 1024];
+    private List<File> mListedFiles;
+    private Path mRoot;
+
+    @Benchmark
+    public long orderAndRead() throws IOException {
+        ScannedFileList files = new ScannedFileList();
+        files.addAll(mListedFiles);
+        fileOrder.sort(files);
+        long bytes = 0;
+
+        for (File file : files) {
+            try (InputStream inputStream = new FileInputStream(file)) {
+                for (int read; (read = inputStream.read(mBuffer)) > 0;) {
+                    bytes += read;
+                }
+            }
+        }
+
+        return bytes;
+    }
+
+    @Setup(Level.Invocation)
+    public void dropCaches() throws IOException, InterruptedException {
+        if (Files.isWritable(DROP_CACHES)) {
+            new ProcessBuilder("sync").start().waitFor();
+            Files.write(DROP_CACHES, "3".getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        mRoot = Files.createTempDirectory("fbd-order");
+        Path source = mRoot.resolve("source");
+        List<Path> paths = new ArrayList<>();
+
+        for (int d = 0; d < dirs; d++) {
+            Path dir = source.resolve(String.format("dir%05d", d));
+            Files.createDirectories(dir);
+
+            for (int f = 0; f < filesPerDir; f++) {
+                paths.add(dir.resolve(String.format("IMG_%06d.jpg", f)));
+            }
+        }
+
+        Random random = new Random(dirs * filesPerDir);
+        Collections.shuffle(paths, random);
+        byte[] bytes = new byte[fileSize];
+        for (Path path : paths) {
+            random.nextBytes(bytes);
+            Files.write(path, bytes);
+        }
+
+        Profile profile = Fixture.createProfile(source, mRoot, DateSource.FILE_MODIFIED, "yyyy/MM");
+        Operation operation = new Operation(Fixture.SILENT_LISTENER, profile);
+        mListedFiles = new ArrayList<>();
+        FileVisitor fileVisitor = new FileVisitor(profile.getPathMatcher(), mListedFiles::add, operation);
+        new DirectoryScanner(1, false, true).scan(source, fileVisitor);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(mRoot.toFile());
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.ttc.tools.fbd;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates fixture trees of small JPEG files with an Exif DateTimeOriginal
+ * and a matching modification time, spread over a few years. The file names
+ * start with the date as yyyyMMdd, which the default file name regex finds.
+ *
+ * @author Patrik Karlström
+ */
+public class Fixture {
+
+    public static final OperationListener SILENT_LISTENER = new OperationListener() {
+        @Override
+        public boolean isLogEnabled() {
+            return false;
+        }
+
+        @Override
+        public void onOperationError(String message) {
+        }
+
+        @Override
+        public void onOperationFailed(String message) {
+        }
+
+        @Override
+        public void onOperationFinished(String message, int fileCount) {
+        }
+
+        @Override
+        public void onOperationInterrupted() {
+        }
+
+        @Override
+        public void onOperationLog(String message) {
+        }
+
+        @Override
+        public void onOperationMetrics(OperationMetrics metrics) {
+        }
+
+        @Override
+        public void onOperationProcessingStarted() {
+        }
+
+        @Override
+        public void onOperationProgress(int value, int max) {
+        }
+
+        @Override
+        public void onOperationStarted() {
+        }
+    };
+    private static final long FIRST_DATE = 946684800000L;
+
+    /**
+     * @param args dir, number of directories, files per directory and file
+     * size in bytes
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4) {
+            System.out.println("usage: Fixture <dir> <dirs> <files per dir> <file size>");
+            System.exit(1);
+        }
+
+        create(Paths.get(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+    }
+
+    public static void create(Path root, int dirs, int filesPerDir, int fileSize) throws IOException {
+        SimpleDateFormat nameFormat = new SimpleDateFormat("yyyyMMdd");
+        nameFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        int index = 0;
+
+        for (int d = 0; d < dirs; d++) {
+            Path dir = root.resolve(String.format("dir%05d", d));
+            Files.createDirectories(dir);
+
+            for (int f = 0; f < filesPerDir; f++) {
+                Date date = new Date(FIRST_DATE + TimeUnit.HOURS.toMillis(17L * index++));
+                File file = dir.resolve(String.format("IMG_%s_%06d.jpg", nameFormat.format(date), f)).toFile();
+                Files.write(file.toPath(), createJpeg(date, fileSize));
+                file.setLastModified(date.getTime());
+            }
+        }
+    }
+
+    public static Profile createProfile(Path source, Path dest, DateSource dateSource, String datePattern) {
+        Profile profile = new Profile();
+        profile.setName("benchmark");
+        profile.setSourceDir(source.toFile());
+        profile.setDestDir(dest.toFile());
+        profile.setFilePattern("*.jpg");
+        profile.setDatePattern(datePattern);
+        profile.setDateSource(dateSource);
+        profile.setOperation(0);
+        profile.setRecursive(true);
+
+        if (!profile.isValid()) {
+            throw new IllegalArgumentException(profile.getValidationError());
+        }
+
+        return profile;
+    }
+
+    /**
+     * SOI, an APP1 segment with a TIFF structure holding only
+     * IFD0 -&gt; Exif IFD -&gt; DateTimeOriginal, zero padding and EOI.
+     */
+    private static byte[] createJpeg(Date date, int size) {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy:MM:dd HH:mm:ss");
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        ByteBuffer tiff = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+        tiff.put((byte) 'I').put((byte) 'I').putShort((short) 0x2a).putInt(8);
+        tiff.putShort((short) 1).putShort((short) 0x8769).putShort((short) 4).putInt(1).putInt(26).putInt(0);
+        tiff.putShort((short) 1).putShort((short) 0x9003).putShort((short) 2).putInt(20).putInt(44).putInt(0);
+        tiff.put(dateFormat.format(date).getBytes(StandardCharsets.US_ASCII)).put((byte) 0);
+
+        ByteBuffer jpeg = ByteBuffer.allocate(Math.max(size, 2 + 4 + 6 + 64 + 2));
+        jpeg.putShort((short) 0xffd8);
+        jpeg.putShort((short) 0xffe1).putShort((short) (2 + 6 + 64));
+        jpeg.put("Exif".getBytes(StandardCharsets.US_ASCII)).put((byte) 0).put((byte) 0);
+        jpeg.put(tiff.array());
+        jpeg.position(jpeg.capacity() - 2);
+        jpeg.putShort((short) 0xffd9);
+
+        return jpeg.array();
+    }
+}
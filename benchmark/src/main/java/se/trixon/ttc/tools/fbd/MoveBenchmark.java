@@ -0,0 +1,72 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.ttc.tools.fbd;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Moves a file back and forth within one file system, the rename Operation
+ * uses for MOVE when source and destination share a file store.
+ *
+ * @author Patrik Karlström
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class MoveBenchmark {
+
+    private Path mMovedFile;
+    private Path mRoot;
+    private Path mSourceFile;
+
+    @Setup
+    public void setup() throws IOException {
+        mRoot = Files.createTempDirectory("fbd-move");
+        mSourceFile = mRoot.resolve("source.bin");
+        mMovedFile = Files.createDirectory(mRoot.resolve("2019")).resolve("source.bin");
+        Files.write(mSourceFile, new byte[4096]);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(mRoot.toFile());
+    }
+
+    @Benchmark
+    public void move() throws IOException {
+        Files.move(mSourceFile, mMovedFile, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(mMovedFile, mSourceFile, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.ttc.tools.fbd;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Copies one file with each {@link TransferEngine}. Divide the file size by
+ * the average time for the throughput.
+ *
+ * @author Patrik Karlström
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class TransferBenchmark {
+
+    @Param({"65536", "16777216"})
+    private int fileSize;
+    @Param({"COMMONS_IO", "CHANNEL", "DIRECT_BUFFER"})
+    private TransferEngine transferEngine;
+    private File mDestFile;
+    private Path mRoot;
+    private File mSourceFile;
+
+    @Setup
+    public void setup() throws IOException {
+        mRoot = Files.createTempDirectory("fbd-transfer");
+        mSourceFile = mRoot.resolve("source.bin").toFile();
+        mDestFile = mRoot.resolve("dest.bin").toFile();
+
+        byte[] bytes = new byte[fileSize];
+        new Random(fileSize).nextBytes(bytes);
+        Files.write(mSourceFile.toPath(), bytes);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(mRoot.toFile());
+    }
+
+    @Benchmark
+    public void copy() throws IOException {
+        transferEngine.transfer(mSourceFile, mDestFile);
+    }
+}
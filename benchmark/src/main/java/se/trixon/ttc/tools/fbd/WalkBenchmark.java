@@ -0,0 +1,96 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.ttc.tools.fbd;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import se.trixon.ttc.tools.DirectoryScanner;
+
+/**
+ * Walks a fixture tree with {@link FileVisitor} and {@link DirectoryScanner},
+ * as Operation does when generating the file list, with and without
+ * resolving file dates from the scanned attributes.
+ *
+ * @author Patrik Karlström
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class WalkBenchmark {
+
+    @Param({"10"})
+    private int dirs;
+    @Param({"1000"})
+    private int filesPerDir;
+    private Operation mOperation;
+    private Profile mProfile;
+    private Path mRoot;
+    @Param({"1", "8"})
+    private int parallelism;
+
+    @Setup
+    public void setup() throws IOException {
+        mRoot = Files.createTempDirectory("fbd-walk");
+        Fixture.create(mRoot.resolve("source"), dirs, filesPerDir, 1024);
+        mProfile = Fixture.createProfile(mRoot.resolve("source"), mRoot, DateSource.FILE_MODIFIED, "yyyy/MM");
+        mOperation = new Operation(Fixture.SILENT_LISTENER, mProfile);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(mRoot.toFile());
+    }
+
+    @Benchmark
+    public List<File> walk() throws IOException {
+        List<File> files = new ArrayList<>();
+        FileVisitor fileVisitor = new FileVisitor(mProfile.getPathMatcher(), files::add, mOperation);
+        new DirectoryScanner(parallelism, false, true).scan(mProfile.getSourceDir().toPath(), fileVisitor);
+
+        return files;
+    }
+
+    @Benchmark
+    public long walkAndDate() throws Exception {
+        long sum = 0;
+        for (File file : walk()) {
+            sum += mOperation.getDate(file).getTime();
+        }
+
+        return sum;
+    }
+}
@@ -20,6 +20,7 @@ import com.dlsc.preferencesfx.model.Category;
 import com.dlsc.preferencesfx.view.PreferencesFxView;
 import se.trixon.almond.util.Dict;
 import se.trixon.ttc.tools.GeneralPreferences;
+import se.trixon.ttc.tools.fbd.FbdPreferences;
 import se.trixon.ttc.tools.mapollage.MapollagePreferences;
 
 /**
@@ -27,6 +28,7 @@ import se.trixon.ttc.tools.mapollage.MapollagePreferences;
  */
 public class Preferences {
 
+    private final FbdPreferences mFbdPreferences = new FbdPreferences();
     private final GeneralPreferences mGeneralPreferences = new GeneralPreferences();
     private final MapollagePreferences mMapollagePreferences = new MapollagePreferences();
     private final PreferencesFx mPreferencesFx;
@@ -43,6 +45,10 @@ public class Preferences {
         mPreferencesFx.discardChanges();
     }
 
+    public FbdPreferences fbd() {
+        return mFbdPreferences;
+    }
+
     public GeneralPreferences general() {
         return mGeneralPreferences;
     }
@@ -65,7 +71,7 @@ public class Preferences {
                 Category.of(Dict.TOOLS.toString())
                         .expand()
                         .subCategories(
-                                //Category.of("FileByDate"),
+                                mFbdPreferences.getCategory(),
                                 mMapollagePreferences.getCategory()
                         )
         ).persistWindowState(false).saveSettings(true).debugHistoryMode(false).buttonsVisibility(true);
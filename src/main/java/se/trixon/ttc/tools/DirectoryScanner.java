@@ -0,0 +1,486 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.ttc.tools;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Directory tree scanner that lists directories concurrently.
+ *
+ * Every directory is listed, and the attributes of its entries read, by a
+ * fork/join task. The subdirectories of a directory are queued once the
+ * visitor has continued into it, and the directories next in line are
+ * listed ahead of the visitor, at most four per thread. On network shares,
+ * where each listing is a round trip, this keeps many requests in flight
+ * instead of one, while skipped subtrees are never listed and memory does
+ * not grow with the size of the tree.
+ *
+ * Each entry is stat'ed exactly once, where the unix view is available its
+ * ctime and inode number are read by the same call. In a directory whose entries the visitor
+ * does not want, only the subdirectories are looked for and the files are
+ * not stat'ed at all.
+ *
+ * The visitor is called on the thread that started the scan, one
+ * directory at a time and in the same depth first order as
+ * {@link Files#walkFileTree}, so visitors need no synchronization and the
+ * result does not depend on the timing of the listings.
+ *
+ * @author Patrik Karlström
+ */
+public class DirectoryScanner {
+
+    private static final LinkOption[] FOLLOW_LINKS = new LinkOption[0];
+    private static final LinkOption[] NOFOLLOW_LINKS = new LinkOption[]{LinkOption.NOFOLLOW_LINKS};
+    private static final String UNIX_ATTRIBUTES = "unix:lastModifiedTime,lastAccessTime,creationTime,ctime,ino,size,isRegularFile,isDirectory,isSymbolicLink,isOther,fileKey";
+    private static final boolean UNIX_VIEW = FileSystems.getDefault().supportedFileAttributeViews().contains("unix");
+
+    private final boolean mFollowLinks;
+    private final int mParallelism;
+    private final boolean mRecursive;
+    private volatile boolean mTerminated;
+    private volatile Visitor mVisitor;
+
+    /**
+     * @param parallelism the number of directories to list at the same time
+     * @param followLinks
+     * @param recursive false to only visit the start directory
+     */
+    public DirectoryScanner(int parallelism, boolean followLinks, boolean recursive) {
+        mParallelism = Math.max(1, parallelism);
+        mFollowLinks = followLinks;
+        mRecursive = recursive;
+    }
+
+    /**
+     * Reads an entry the same way as the scanner does, following links.
+     *
+     * @param path
+     * @return
+     * @throws IOException
+     */
+    public static Entry readEntry(Path path) throws IOException {
+        return new Entry(path, readAttributes(path, FOLLOW_LINKS));
+    }
+
+    /**
+     * Scans the tree below start.
+     *
+     * @param start
+     * @param visitor
+     * @return false if the visitor terminated the scan
+     * @throws IOException if the attributes of start can not be read
+     */
+    public boolean scan(Path start, Visitor visitor) throws IOException {
+        BasicFileAttributes attrs = readAttributes(start, mFollowLinks ? FOLLOW_LINKS : NOFOLLOW_LINKS);
+        ForkJoinPool pool = new ForkJoinPool(mParallelism);
+        mTerminated = false;
+        mVisitor = visitor;
+
+        try {
+            List<DirectoryTask> stack = new ArrayList<>();
+            List<DirectoryTask> forked = new ArrayList<>();
+            push(stack, new DirectoryTask(start, attrs, Collections.emptySet()));
+
+            while (!stack.isEmpty()) {
+                fill(pool, stack, forked);
+                DirectoryTask task = stack.remove(stack.size() - 1);
+                Directory directory = forked.remove(task) ? task.join() : task.invoke();
+
+                for (Failure failure : directory.mFailures) {
+                    visitor.visitFailed(failure.mPath, failure.mException);
+                }
+
+                if (directory.mFiles == null) {
+                    continue;
+                }
+
+                FileVisitResult result = visitor.visitDirectory(directory.mDir, directory.mAttrs, directory.mFiles);
+                if (result == FileVisitResult.TERMINATE) {
+                    return false;
+                } else if (result != FileVisitResult.SKIP_SUBTREE) {
+                    for (int i = directory.mSubDirs.size() - 1; i >= 0; i--) {
+                        push(stack, directory.mSubDirs.get(i));
+                    }
+                }
+            }
+
+            return true;
+        } finally {
+            mTerminated = true;
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Forks the directories among the next to visit that are not yet
+     * listing, keeping at most four per thread in flight. Forked directories
+     * that have not started and are no longer among the next to visit give
+     * their places to those that are.
+     */
+    private void fill(ForkJoinPool pool, List<DirectoryTask> stack, List<DirectoryTask> forked) {
+        int window = mParallelism * 4;
+        int top = Math.max(0, stack.size() - window);
+
+        int wanted = 0;
+        for (int i = top; i < stack.size(); i++) {
+            if (!stack.get(i).mForked) {
+                wanted++;
+            }
+        }
+
+        int revoke = wanted - (window - forked.size());
+        for (int i = 0; i < forked.size() && revoke > 0; i++) {
+            DirectoryTask task = forked.get(i);
+            if (task.mIndex < top && task.revoke()) {
+                stack.set(task.mIndex, task.copy());
+                forked.remove(i--);
+                revoke--;
+            }
+        }
+
+        for (int i = stack.size() - 1; i >= top && forked.size() < window; i--) {
+            DirectoryTask task = stack.get(i);
+            if (!task.mForked) {
+                task.mForked = true;
+                pool.execute(task);
+                forked.add(task);
+            }
+        }
+    }
+
+    private void push(List<DirectoryTask> stack, DirectoryTask task) {
+        task.mIndex = stack.size();
+        stack.add(task);
+    }
+
+    private BasicFileAttributes readAttributes(Path path) throws IOException {
+        if (mFollowLinks) {
+            try {
+                return readAttributes(path, FOLLOW_LINKS);
+            } catch (IOException ex) {
+                //A broken link, use the link itself like Files.walkFileTree does
+                return readAttributes(path, NOFOLLOW_LINKS);
+            }
+        } else {
+            return readAttributes(path, NOFOLLOW_LINKS);
+        }
+    }
+
+    private static BasicFileAttributes readAttributes(Path path, LinkOption[] linkOptions) throws IOException {
+        if (UNIX_VIEW) {
+            return new UnixAttributes(Files.readAttributes(path, UNIX_ATTRIBUTES, linkOptions));
+        } else {
+            return Files.readAttributes(path, BasicFileAttributes.class, linkOptions);
+        }
+    }
+
+    public interface Visitor {
+
+        /**
+         * Called once for every directory that could be listed.
+         *
+         * @param dir
+         * @param attrs the attributes of dir
+         * @param files the entries of dir that are not directories, in
+         * listing order, or an empty list if the visitor did not want them
+         * @return CONTINUE, SKIP_SUBTREE or TERMINATE
+         */
+        FileVisitResult visitDirectory(Path dir, BasicFileAttributes attrs, List<Entry> files);
+
+        /**
+         * Called for a directory that could not be listed, an entry whose
+         * attributes could not be read or a directory loop.
+         *
+         * @param path
+         * @param exception
+         */
+        default void visitFailed(Path path, IOException exception) {
+        }
+
+        /**
+         * Called before a directory is listed, on one of the scanning threads
+         * and possibly at the same time for several directories.
+         *
+         * @param dir
+         * @param attrs the attributes of dir
+         * @return false if the files of dir will be ignored, they are then
+         * neither stat'ed nor passed to {@link #visitDirectory}
+         */
+        default boolean wantsEntries(Path dir, BasicFileAttributes attrs) {
+            return true;
+        }
+    }
+
+    /**
+     * A directory entry and its attributes, read once while listing.
+     */
+    public static class Entry {
+
+        private final BasicFileAttributes mAttributes;
+        private final Path mPath;
+
+        Entry(Path path, BasicFileAttributes attributes) {
+            mPath = path;
+            mAttributes = attributes;
+        }
+
+        public BasicFileAttributes getAttributes() {
+            return mAttributes;
+        }
+
+        /**
+         * @return the time of the last status change, or the creation time
+         * where the unix view is not available
+         */
+        public FileTime getChangeTime() {
+            if (mAttributes instanceof UnixAttributes) {
+                return ((UnixAttributes) mAttributes).mChangeTime;
+            }
+
+            return mAttributes.creationTime();
+        }
+
+        /**
+         * @return the inode number, or -1 where the unix view is not
+         * available
+         */
+        public long getInode() {
+            if (mAttributes instanceof UnixAttributes) {
+                return ((UnixAttributes) mAttributes).mInode;
+            }
+
+            return -1;
+        }
+
+        public Path getPath() {
+            return mPath;
+        }
+    }
+
+    private static class Directory {
+
+        private final BasicFileAttributes mAttrs;
+        private final Path mDir;
+        private final List<Failure> mFailures = new ArrayList<>();
+        private List<Entry> mFiles;
+        private final List<DirectoryTask> mSubDirs = new ArrayList<>();
+
+        Directory(Path dir, BasicFileAttributes attrs) {
+            mDir = dir;
+            mAttrs = attrs;
+        }
+    }
+
+    private static class Failure {
+
+        private final IOException mException;
+        private final Path mPath;
+
+        Failure(Path path, IOException exception) {
+            mPath = path;
+            mException = exception;
+        }
+    }
+
+    private static class UnixAttributes implements BasicFileAttributes {
+
+        private final FileTime mChangeTime;
+        private final FileTime mCreationTime;
+        private final boolean mDirectory;
+        private final Object mFileKey;
+        private final long mInode;
+        private final FileTime mLastAccessTime;
+        private final FileTime mLastModifiedTime;
+        private final boolean mOther;
+        private final boolean mRegularFile;
+        private final long mSize;
+        private final boolean mSymbolicLink;
+
+        UnixAttributes(Map<String, Object> attributes) {
+            mLastModifiedTime = (FileTime) attributes.get("lastModifiedTime");
+            mLastAccessTime = (FileTime) attributes.get("lastAccessTime");
+            mCreationTime = (FileTime) attributes.get("creationTime");
+            mChangeTime = (FileTime) attributes.get("ctime");
+            mInode = (Long) attributes.get("ino");
+            mSize = (Long) attributes.get("size");
+            mRegularFile = (Boolean) attributes.get("isRegularFile");
+            mDirectory = (Boolean) attributes.get("isDirectory");
+            mSymbolicLink = (Boolean) attributes.get("isSymbolicLink");
+            mOther = (Boolean) attributes.get("isOther");
+            mFileKey = attributes.get("fileKey");
+        }
+
+        @Override
+        public FileTime creationTime() {
+            return mCreationTime;
+        }
+
+        @Override
+        public Object fileKey() {
+            return mFileKey;
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return mDirectory;
+        }
+
+        @Override
+        public boolean isOther() {
+            return mOther;
+        }
+
+        @Override
+        public boolean isRegularFile() {
+            return mRegularFile;
+        }
+
+        @Override
+        public boolean isSymbolicLink() {
+            return mSymbolicLink;
+        }
+
+        @Override
+        public FileTime lastAccessTime() {
+            return mLastAccessTime;
+        }
+
+        @Override
+        public FileTime lastModifiedTime() {
+            return mLastModifiedTime;
+        }
+
+        @Override
+        public long size() {
+            return mSize;
+        }
+    }
+
+    private class DirectoryTask extends RecursiveTask<Directory> {
+
+        private final Set<Object> mAncestorKeys;
+        private final BasicFileAttributes mAttrs;
+        private final AtomicBoolean mClaimed = new AtomicBoolean();
+        private final Path mDir;
+        private boolean mForked;
+        private int mIndex;
+
+        DirectoryTask(Path dir, BasicFileAttributes attrs, Set<Object> ancestorKeys) {
+            mDir = dir;
+            mAttrs = attrs;
+            mAncestorKeys = ancestorKeys;
+        }
+
+        @Override
+        protected Directory compute() {
+            if (!mClaimed.compareAndSet(false, true)) {
+                //Revoked, a copy has taken its place
+                return null;
+            }
+
+            Directory directory = new Directory(mDir, mAttrs);
+            if (mTerminated) {
+                return directory;
+            }
+
+            //Loops can only be made by links
+            Set<Object> ancestorKeys = mAncestorKeys;
+            if (mFollowLinks && mAttrs.fileKey() != null) {
+                ancestorKeys = new HashSet<>(mAncestorKeys);
+                ancestorKeys.add(mAttrs.fileKey());
+            }
+
+            boolean wantsEntries = mVisitor.wantsEntries(mDir, mAttrs);
+            List<Entry> files = wantsEntries ? new ArrayList<>() : Collections.emptyList();
+            if (!wantsEntries && !mRecursive) {
+                directory.mFiles = files;
+                return directory;
+            }
+
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(mDir)) {
+                for (Path path : stream) {
+                    //Only the subdirectories are needed, a plain test finds them without reading the attributes of every file
+                    if (!wantsEntries && !Files.isDirectory(path, mFollowLinks ? FOLLOW_LINKS : NOFOLLOW_LINKS)) {
+                        continue;
+                    }
+
+                    BasicFileAttributes attrs;
+                    try {
+                        attrs = readAttributes(path);
+                    } catch (IOException ex) {
+                        directory.mFailures.add(new Failure(path, ex));
+                        continue;
+                    }
+
+                    if (!attrs.isDirectory()) {
+                        files.add(new Entry(path, attrs));
+                    } else if (mRecursive) {
+                        if (attrs.fileKey() != null && ancestorKeys.contains(attrs.fileKey())) {
+                            directory.mFailures.add(new Failure(path, new FileSystemLoopException(path.toString())));
+                        } else {
+                            directory.mSubDirs.add(new DirectoryTask(path, attrs, ancestorKeys));
+                        }
+                    }
+                }
+            } catch (IOException ex) {
+                directory.mFailures.add(new Failure(mDir, ex));
+                directory.mSubDirs.clear();
+                return directory;
+            } catch (DirectoryIteratorException ex) {
+                directory.mFailures.add(new Failure(mDir, ex.getCause()));
+                directory.mSubDirs.clear();
+                return directory;
+            }
+
+            directory.mFiles = files;
+
+            return directory;
+        }
+
+        DirectoryTask copy() {
+            DirectoryTask task = new DirectoryTask(mDir, mAttrs, mAncestorKeys);
+            task.mIndex = mIndex;
+
+            return task;
+        }
+
+        /**
+         * @return true if the task had not started and never will
+         */
+        boolean revoke() {
+            return mClaimed.compareAndSet(false, true);
+        }
+    }
+}
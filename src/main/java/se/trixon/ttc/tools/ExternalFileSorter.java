@@ -0,0 +1,306 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.ttc.tools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Collects files and hands them out in path order within a memory budget.
+ *
+ * Files are kept in a {@link FileList} until it outgrows half of the
+ * budget, the other half is left for sorting it. It is then sorted and
+ * written to a temporary run file. After {@link #sort()} the iterator
+ * streams a k-way merge of the runs. At most {@value #MAX_FAN_IN} runs are
+ * open at once, when there are more the oldest ones are first merged into
+ * larger runs. Without a budget, or when nothing was spilled, this is just
+ * a sorted FileList.
+ *
+ * @author Patrik Karlström
+ */
+public class ExternalFileSorter extends AbstractCollection<File> implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_FAN_IN = 32;
+
+    private IOException mException;
+    private FileList mList;
+    private final long mMemoryBudget;
+    private final List<DataInputStream> mOpenRuns = new ArrayList<>();
+    private final List<File> mRuns = new ArrayList<>();
+    private int mSize;
+
+    /**
+     * @param memoryBudget in bytes, 0 to keep every file in memory
+     */
+    public ExternalFileSorter(long memoryBudget) {
+        mMemoryBudget = memoryBudget;
+    }
+
+    /**
+     * Adds a file, a run that can not be written is reported by
+     * {@link #sort()}.
+     *
+     * @param file
+     * @return true
+     */
+    @Override
+    public boolean add(File file) {
+        if (mList == null) {
+            mList = createList();
+        }
+
+        mList.add(file);
+        mSize++;
+
+        if (mMemoryBudget > 0 && mException == null && mList.getMemoryUsage() > mMemoryBudget / 2) {
+            try {
+                writeRun();
+            } catch (IOException ex) {
+                mException = ex;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Closes the runs and deletes their files.
+     */
+    @Override
+    public void close() {
+        for (DataInputStream run : mOpenRuns) {
+            try {
+                run.close();
+            } catch (IOException ex) {
+                //nvm
+            }
+        }
+
+        mOpenRuns.clear();
+        mRuns.forEach((run) -> {
+            run.delete();
+        });
+        mRuns.clear();
+        mList = null;
+        mSize = 0;
+    }
+
+    /**
+     * @return the files in path order once {@link #sort()} has been called
+     */
+    @Override
+    public Iterator<File> iterator() {
+        if (mRuns.isEmpty()) {
+            return mList == null ? new ArrayList<File>().iterator() : mList.iterator();
+        }
+
+        try {
+            return new MergeIterator(mRuns);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * @return true if files have been written to runs
+     */
+    public boolean isSpilled() {
+        return !mRuns.isEmpty();
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Sorts the files still in memory, and writes them as the last run if
+     * earlier runs exist. Merges runs until no more than
+     * {@value #MAX_FAN_IN} are left.
+     *
+     * @throws IOException if a run could not be read or written
+     */
+    public void sort() throws IOException {
+        if (mException != null) {
+            throw mException;
+        }
+
+        if (mList != null) {
+            if (mRuns.isEmpty()) {
+                mList.sort(null);
+            } else if (!mList.isEmpty()) {
+                writeRun();
+            }
+        }
+
+        while (mRuns.size() > MAX_FAN_IN) {
+            mergeRuns();
+        }
+    }
+
+    /**
+     * Adds a new, empty, run file that is deleted on {@link #close()}.
+     */
+    private DataOutputStream createRun() throws IOException {
+        File runFile = File.createTempFile("ttc-sort-", ".run");
+        runFile.deleteOnExit();
+        mRuns.add(runFile);
+
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(runFile), BUFFER_SIZE));
+    }
+
+    /**
+     * Merges the {@value #MAX_FAN_IN} oldest runs into a new run.
+     */
+    private void mergeRuns() throws IOException {
+        List<File> runs = new ArrayList<>(mRuns.subList(0, MAX_FAN_IN));
+
+        try (DataOutputStream outputStream = createRun()) {
+            MergeIterator iterator = new MergeIterator(runs);
+            while (iterator.hasNext()) {
+                writeFile(outputStream, iterator.next());
+            }
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+
+        runs.forEach((run) -> {
+            run.delete();
+        });
+        mRuns.removeAll(runs);
+    }
+
+    private void writeRun() throws IOException {
+        mList.sort(null);
+
+        try (DataOutputStream outputStream = createRun()) {
+            for (File file : mList) {
+                writeFile(outputStream, file);
+            }
+        }
+
+        mList.clear();
+    }
+
+    /**
+     * @return the list to collect files in
+     */
+    protected FileList createList() {
+        return new FileList();
+    }
+
+    /**
+     * Reads a file written by {@link #writeFile(java.io.DataOutputStream, java.io.File)}.
+     *
+     * @param inputStream
+     * @return
+     * @throws IOException
+     */
+    protected File readFile(DataInputStream inputStream) throws IOException {
+        return new File(inputStream.readUTF());
+    }
+
+    /**
+     * Writes a file to a run.
+     *
+     * @param outputStream
+     * @param file
+     * @throws IOException
+     */
+    protected void writeFile(DataOutputStream outputStream, File file) throws IOException {
+        outputStream.writeUTF(file.getPath());
+    }
+
+    private class MergeIterator implements Iterator<File> {
+
+        private final PriorityQueue<Run> mQueue;
+
+        MergeIterator(List<File> runFiles) throws IOException {
+            mQueue = new PriorityQueue<>(Math.max(1, runFiles.size()), (r1, r2) -> r1.mHead.compareTo(r2.mHead));
+            for (File runFile : runFiles) {
+                Run run = new Run(new DataInputStream(new BufferedInputStream(new FileInputStream(runFile), BUFFER_SIZE)));
+                if (run.advance()) {
+                    mQueue.add(run);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !mQueue.isEmpty();
+        }
+
+        @Override
+        public File next() {
+            Run run = mQueue.poll();
+            if (run == null) {
+                throw new NoSuchElementException();
+            }
+
+            File file = run.mHead;
+            try {
+                if (run.advance()) {
+                    mQueue.add(run);
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+
+            return file;
+        }
+    }
+
+    private class Run {
+
+        private File mHead;
+        private final DataInputStream mInputStream;
+
+        Run(DataInputStream inputStream) {
+            mInputStream = inputStream;
+            mOpenRuns.add(inputStream);
+        }
+
+        /**
+         * Reads the next file of the run, closes it at the end.
+         */
+        boolean advance() throws IOException {
+            try {
+                mHead = readFile(mInputStream);
+                return true;
+            } catch (EOFException ex) {
+                mInputStream.close();
+                mOpenRuns.remove(mInputStream);
+                return false;
+            }
+        }
+    }
+}
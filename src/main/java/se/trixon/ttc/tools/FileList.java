@@ -0,0 +1,300 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.ttc.tools;
+
+import java.io.File;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.RandomAccess;
+
+/**
+ * Compact list of files for scans of millions of entries.
+ *
+ * Parent directories are interned once and the names are packed into a
+ * shared char arena addressed by int offsets, so an entry costs a few ints
+ * plus its name instead of a File with its full path. Files are created on
+ * access. Sorting reorders an index array and compares the paths in place,
+ * in the same order as {@link File#compareTo(java.io.File)}.
+ *
+ * Only adding, clearing and sorting are supported.
+ *
+ * @author Patrik Karlström
+ */
+public class FileList extends AbstractList<File> implements RandomAccess {
+
+    private static final boolean IGNORE_CASE = File.separatorChar == '\\';
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private char[] mChars = new char[INITIAL_CAPACITY * 16];
+    private int mCharCount;
+    private long mDirChars;
+    private final HashMap<String, Integer> mDirIndexes = new HashMap<>();
+    private final ArrayList<String> mDirPrefixes = new ArrayList<>();
+    private int[] mEntryDirs = new int[INITIAL_CAPACITY];
+    private String mLastDir;
+    private int mLastDirIndex;
+    private int[] mNameStarts = new int[INITIAL_CAPACITY];
+    private int[] mOrder;
+    private int mSize;
+
+    public FileList() {
+    }
+
+    @Override
+    public boolean add(File file) {
+        addEntry(file);
+
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        mChars = new char[INITIAL_CAPACITY * 16];
+        mCharCount = 0;
+        mDirChars = 0;
+        mDirIndexes.clear();
+        mDirPrefixes.clear();
+        mEntryDirs = new int[INITIAL_CAPACITY];
+        mLastDir = null;
+        mNameStarts = new int[INITIAL_CAPACITY];
+        mOrder = null;
+        mSize = 0;
+        modCount++;
+    }
+
+    @Override
+    public File get(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException(String.format("Index: %d, Size: %d", index, mSize));
+        }
+
+        int entry = getEntry(index);
+
+        return createFile(entry, mDirPrefixes.get(mEntryDirs[entry]) + new String(mChars, mNameStarts[entry], getNameLength(entry)));
+    }
+
+    /**
+     * @return an estimate of the heap used by the list, in bytes
+     */
+    public long getMemoryUsage() {
+        long orderLength = mOrder == null ? 0 : mOrder.length;
+
+        return mChars.length * 2L + (mEntryDirs.length + mNameStarts.length + orderLength) * 4L + mDirChars * 2L + mDirPrefixes.size() * 96L;
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Sorts by path without creating any files when comparator is null.
+     *
+     * @param comparator
+     */
+    @Override
+    public void sort(Comparator<? super File> comparator) {
+        if (comparator == null) {
+            sortIndexes((index1, index2) -> comparePaths(getEntry(index1), getEntry(index2)));
+        } else {
+            sortIndexes((index1, index2) -> comparator.compare(get(index1), get(index2)));
+        }
+    }
+
+    /**
+     * Stable sort by the current indexes of the files, for orders computed
+     * from keys kept outside of the list.
+     *
+     * @param comparator
+     */
+    public void sortIndexes(IndexComparator comparator) {
+        int[] indexes = new int[mSize];
+        for (int i = 0; i < mSize; i++) {
+            indexes[i] = i;
+        }
+
+        mergeSort(indexes, new int[mSize], 0, mSize, comparator);
+
+        int[] order = new int[mSize];
+        for (int i = 0; i < mSize; i++) {
+            order[i] = getEntry(indexes[i]);
+        }
+
+        mOrder = order;
+        modCount++;
+    }
+
+    /**
+     * Compares the paths of two entries char by char, as the path strings
+     * would have been compared.
+     */
+    private int comparePaths(int entry1, int entry2) {
+        String prefix1 = mDirPrefixes.get(mEntryDirs[entry1]);
+        String prefix2 = mDirPrefixes.get(mEntryDirs[entry2]);
+        int prefixLength1 = prefix1 == prefix2 ? 0 : prefix1.length();
+        int prefixLength2 = prefix1 == prefix2 ? 0 : prefix2.length();
+        int length1 = prefixLength1 + getNameLength(entry1);
+        int length2 = prefixLength2 + getNameLength(entry2);
+        int nameStart1 = mNameStarts[entry1] - prefixLength1;
+        int nameStart2 = mNameStarts[entry2] - prefixLength2;
+
+        for (int i = 0; i < Math.min(length1, length2); i++) {
+            char c1 = i < prefixLength1 ? prefix1.charAt(i) : mChars[nameStart1 + i];
+            char c2 = i < prefixLength2 ? prefix2.charAt(i) : mChars[nameStart2 + i];
+
+            if (c1 != c2) {
+                if (IGNORE_CASE) {
+                    c1 = Character.toLowerCase(Character.toUpperCase(c1));
+                    c2 = Character.toLowerCase(Character.toUpperCase(c2));
+                    if (c1 == c2) {
+                        continue;
+                    }
+                }
+
+                return c1 - c2;
+            }
+        }
+
+        return length1 - length2;
+    }
+
+    private int getDirIndex(String dir) {
+        if (dir.equals(mLastDir)) {
+            return mLastDirIndex;
+        }
+
+        Integer dirIndex = mDirIndexes.get(dir);
+        if (dirIndex == null) {
+            dirIndex = mDirPrefixes.size();
+            mDirIndexes.put(dir, dirIndex);
+            mDirPrefixes.add(dir.isEmpty() || dir.endsWith(File.separator) ? dir : dir + File.separator);
+            mDirChars += dir.length() * 2 + 1;
+        }
+
+        mLastDir = dir;
+        mLastDirIndex = dirIndex;
+
+        return dirIndex;
+    }
+
+    private int getNameLength(int entry) {
+        return (entry + 1 < mSize ? mNameStarts[entry + 1] : mCharCount) - mNameStarts[entry];
+    }
+
+    private static void mergeSort(int[] indexes, int[] buffer, int from, int to, IndexComparator comparator) {
+        if (to - from <= 16) {
+            for (int i = from + 1; i < to; i++) {
+                int index = indexes[i];
+                int j = i;
+                while (j > from && comparator.compare(indexes[j - 1], index) > 0) {
+                    indexes[j] = indexes[j - 1];
+                    j--;
+                }
+                indexes[j] = index;
+            }
+
+            return;
+        }
+
+        int middle = (from + to) >>> 1;
+        mergeSort(indexes, buffer, from, middle, comparator);
+        mergeSort(indexes, buffer, middle, to, comparator);
+
+        if (comparator.compare(indexes[middle - 1], indexes[middle]) <= 0) {
+            return;
+        }
+
+        System.arraycopy(indexes, from, buffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && comparator.compare(buffer[left], buffer[right]) <= 0)) {
+                indexes[i] = buffer[left++];
+            } else {
+                indexes[i] = buffer[right++];
+            }
+        }
+    }
+
+    /**
+     * Stores a file.
+     *
+     * @param file
+     * @return the entry of the file, for subclasses that keep data of their
+     * own per entry
+     */
+    protected int addEntry(File file) {
+        String dir = file.getParent();
+        String name = file.getName();
+
+        if (mSize == mNameStarts.length) {
+            int capacity = mSize + (mSize >> 1);
+            mEntryDirs = Arrays.copyOf(mEntryDirs, capacity);
+            mNameStarts = Arrays.copyOf(mNameStarts, capacity);
+        }
+
+        if (mOrder != null) {
+            if (mSize == mOrder.length) {
+                mOrder = Arrays.copyOf(mOrder, mNameStarts.length);
+            }
+            mOrder[mSize] = mSize;
+        }
+
+        if (mCharCount + name.length() > mChars.length) {
+            mChars = Arrays.copyOf(mChars, Math.max(mCharCount + name.length(), mChars.length + (mChars.length >> 1)));
+        }
+
+        name.getChars(0, name.length(), mChars, mCharCount);
+        mEntryDirs[mSize] = getDirIndex(dir == null ? "" : dir);
+        mNameStarts[mSize] = mCharCount;
+        mCharCount += name.length();
+        modCount++;
+
+        return mSize++;
+    }
+
+    /**
+     * @param index
+     * @return the entry at the current index of a file
+     */
+    protected int getEntry(int index) {
+        return mOrder == null ? index : mOrder[index];
+    }
+
+    /**
+     * Creates the file of an entry on access.
+     *
+     * @param entry
+     * @param path
+     * @return
+     */
+    protected File createFile(int entry, String path) {
+        return new File(path);
+    }
+
+    public interface IndexComparator {
+
+        /**
+         * @param index1
+         * @param index2
+         * @return as {@link Comparator#compare(java.lang.Object, java.lang.Object)}
+         */
+        int compare(int index1, int index2);
+    }
+}
@@ -15,19 +15,24 @@
  */
 package se.trixon.ttc.tools;
 
+import com.dlsc.formsfx.model.validators.IntegerRangeValidator;
 import com.dlsc.preferencesfx.model.Category;
 import com.dlsc.preferencesfx.model.Group;
 import com.dlsc.preferencesfx.model.Setting;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Locale;
+import java.util.ResourceBundle;
 import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import se.trixon.almond.util.Dict;
+import se.trixon.almond.util.SystemHelper;
 
 /**
  *
@@ -35,9 +40,12 @@ import se.trixon.almond.util.Dict;
  */
 public class GeneralPreferences {
 
+    private final ResourceBundle mBundle = SystemHelper.getBundle(GeneralPreferences.class, "Bundle");
     private final Category mCategory;
     private final ObservableList<String> mLocaleItems = FXCollections.observableArrayList();
     private final ObjectProperty<String> mLocaleSelection = new SimpleObjectProperty<>(Locale.getDefault().getDisplayName());
+    private final IntegerProperty mScanParallelism = new SimpleIntegerProperty(8);
+    private final IntegerProperty mSortMemory = new SimpleIntegerProperty(0);
     private final BooleanProperty mWordWrap = new SimpleBooleanProperty(true);
 
     public GeneralPreferences() {
@@ -53,6 +61,12 @@ public class GeneralPreferences {
                 ),
                 Group.of(Dict.LOGGING.toString(),
                         Setting.of(Dict.DYNAMIC_WORD_WRAP.toString(), mWordWrap).customKey("general.wordWrap")
+                ),
+                Group.of(mBundle.getString("file_list"),
+                        Setting.of(mBundle.getString("scan_parallelism"), mScanParallelism).customKey("general.scanParallelism")
+                                .validate(IntegerRangeValidator.between(1, 64, "errorMessage")),
+                        Setting.of(mBundle.getString("sort_memory"), mSortMemory).customKey("general.sortMemory")
+                                .validate(IntegerRangeValidator.between(0, 65536, "errorMessage"))
                 )
         );
     }
@@ -66,6 +80,21 @@ public class GeneralPreferences {
 //        return Locale.forLanguageTag(mPreferences.get(KEY_LOCALE, DEFAULT_LOCALE.toLanguageTag()));
     }
 
+    /**
+     * @return the number of directories to list at the same time
+     */
+    public int getScanParallelism() {
+        return mScanParallelism.get();
+    }
+
+    /**
+     * @return the heap budget for sorting file lists in bytes, 0 for no
+     * limit
+     */
+    public long getSortMemory() {
+        return mSortMemory.get() * 1024L * 1024L;
+    }
+
     public boolean isWordWrap() {
         return mWordWrap.get();
     }
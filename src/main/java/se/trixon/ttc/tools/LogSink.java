@@ -0,0 +1,128 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.ttc.tools;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Console output written by a background thread.
+ *
+ * Callers only add to a bounded blocking queue, which holds its lock just
+ * for the add and never during a write. The writer drains everything queued
+ * into a large buffer and flushes once per batch, so a terminal or pipe that
+ * is briefly slow does not hold up the operation. When the output can not
+ * keep up at all, callers block until there is room instead of filling the
+ * heap.
+ *
+ * @author Patrik Karlström
+ */
+public class LogSink {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int CAPACITY = 8192;
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private volatile boolean mClosed;
+    private final BlockingQueue<String> mQueue = new ArrayBlockingQueue<>(CAPACITY);
+    private final Thread mThread;
+    private final Writer mWriter;
+
+    public LogSink(OutputStream outputStream) {
+        mWriter = new BufferedWriter(new OutputStreamWriter(outputStream), BUFFER_SIZE);
+        mThread = new Thread(this::write, "LogSink");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    /**
+     * Writes everything queued and stops the writer.
+     */
+    public void close() {
+        if (!mClosed) {
+            mClosed = true;
+            LockSupport.unpark(mThread);
+
+            try {
+                mThread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public void print(String string) {
+        put(string);
+    }
+
+    public void println() {
+        put(LINE_SEPARATOR);
+    }
+
+    public void println(String string) {
+        put(string + LINE_SEPARATOR);
+    }
+
+    private void put(String string) {
+        try {
+            //Nothing drains the queue once the writer has stopped
+            while (!mQueue.offer(string, 100, TimeUnit.MILLISECONDS)) {
+                if (!mThread.isAlive()) {
+                    return;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write() {
+        while (true) {
+            boolean closed = mClosed;
+            boolean written = false;
+
+            try {
+                for (String string; (string = mQueue.poll()) != null;) {
+                    mWriter.write(string);
+                    written = true;
+                }
+
+                if (written) {
+                    mWriter.flush();
+                }
+            } catch (IOException ex) {
+                //The console is gone, drop the output
+                mQueue.clear();
+            }
+
+            if (closed && mQueue.isEmpty()) {
+                break;
+            }
+
+            if (!written) {
+                LockSupport.parkNanos(this, IDLE_NANOS);
+            }
+        }
+    }
+}
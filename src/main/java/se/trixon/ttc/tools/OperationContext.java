@@ -0,0 +1,76 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.ttc.tools;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cancellation and progress state shared by an operation, its file visitor
+ * and its workers.
+ *
+ * Cancellation is a plain volatile flag, so checking it once per file or
+ * directory entry is free compared to the sleep based interrupt polling it
+ * replaces.
+ *
+ * @author Patrik Karlström
+ */
+public class OperationContext {
+
+    private volatile boolean mCancelled;
+    private final AtomicInteger mProgress = new AtomicInteger();
+    private final AtomicInteger mTotal = new AtomicInteger();
+
+    public OperationContext() {
+    }
+
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    public int getProgress() {
+        return mProgress.get();
+    }
+
+    public int getTotal() {
+        return mTotal.get();
+    }
+
+    public int incrementProgress() {
+        return mProgress.incrementAndGet();
+    }
+
+    /**
+     * Counts one more file, for walkers that add to the total while the
+     * operation is running.
+     *
+     * @return the new total
+     */
+    public int incrementTotal() {
+        return mTotal.incrementAndGet();
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    public void setProgress(int progress) {
+        mProgress.set(progress);
+    }
+
+    public void setTotal(int total) {
+        mTotal.set(total);
+    }
+}
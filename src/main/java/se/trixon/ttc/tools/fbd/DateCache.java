@@ -0,0 +1,249 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.ttc.tools.fbd;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Persistent map from (absolute path, size, modification time) to a
+ * resolved date, or to {@link #NO_DATE} for a file that has none.
+ *
+ * The file is append-only: a small header followed by fixed layout records
+ * of path, size, mtime, date source and date. It is memory mapped on load
+ * and new records are appended in one batch on close. Entries that were not
+ * seen during a complete run belong to files that are gone or changed, and
+ * are dropped by rewriting the file once they make up a large part of it.
+ *
+ * @author Patrik Karlström
+ */
+class DateCache {
+
+    /**
+     * The date of a file that was read and found to have no date.
+     */
+    static final long NO_DATE = Long.MIN_VALUE;
+
+    private static final int MAGIC = 0x46424443;
+    private static final int VERSION = 1;
+
+    private final Map<String, Entry> mEntries = new ConcurrentHashMap<>();
+    private final File mFile;
+    private final ConcurrentLinkedQueue<Entry> mNewEntries = new ConcurrentLinkedQueue<>();
+    private int mRecordCount;
+    private boolean mValidHeader = true;
+    private long mValidLength;
+
+    static DateCache open(File file) throws IOException {
+        DateCache dateCache = new DateCache(file);
+        dateCache.load();
+
+        return dateCache;
+    }
+
+    private DateCache(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Writes the records added since open or the last flush.
+     *
+     * @param complete true if every source file was looked up during the
+     * run, which makes it safe to evict the entries that were not. Only a
+     * full scan of the sources qualifies.
+     * @throws IOException
+     */
+    void close(boolean complete) throws IOException {
+        if (complete) {
+            int live = 0;
+            for (Entry entry : mEntries.values()) {
+                if (entry.mTouched) {
+                    live++;
+                }
+            }
+
+            int total = mRecordCount + mNewEntries.size();
+            if (total - live > live / 4) {
+                rewrite();
+                return;
+            }
+        }
+
+        flush();
+    }
+
+    /**
+     * Writes the records added since open or the last flush, for a cache
+     * that is kept open over several runs.
+     *
+     * @throws IOException
+     */
+    void flush() throws IOException {
+        if (!mValidHeader) {
+            rewrite();
+        } else if (!mNewEntries.isEmpty()) {
+            if (mFile.length() > mValidLength) {
+                //Drop a partial record at the end so that new records follow a complete one
+                try (FileChannel channel = FileChannel.open(mFile.toPath(), StandardOpenOption.WRITE)) {
+                    channel.truncate(mValidLength);
+                }
+            }
+
+            try (DataOutputStream outputStream = openStream(StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                if (mValidLength == 0) {
+                    writeHeader(outputStream);
+                }
+
+                for (Entry entry : mNewEntries) {
+                    writeEntry(outputStream, entry);
+                }
+            }
+
+            mRecordCount += mNewEntries.size();
+            mNewEntries.clear();
+            mValidLength = mFile.length();
+        }
+    }
+
+    Long get(File file, long size, long lastModified, DateSource dateSource) {
+        Entry entry = mEntries.get(file.getAbsolutePath());
+        if (entry != null && entry.mSize == size && entry.mLastModified == lastModified && entry.mDateSource == dateSource.ordinal()) {
+            entry.mTouched = true;
+            return entry.mDate;
+        }
+
+        return null;
+    }
+
+    void put(File file, long size, long lastModified, DateSource dateSource, long date) {
+        Entry entry = new Entry(file.getAbsolutePath(), size, lastModified, (byte) dateSource.ordinal(), date);
+        entry.mTouched = true;
+        mEntries.put(entry.mPath, entry);
+        mNewEntries.add(entry);
+    }
+
+    private void load() throws IOException {
+        if (!mFile.isFile() || mFile.length() < 8) {
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(mFile.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                mValidHeader = false;
+                return;
+            }
+            mValidLength = buffer.position();
+
+            byte[] pathBytes = new byte[256];
+            try {
+                while (buffer.hasRemaining()) {
+                    int pathLength = buffer.getShort() & 0xFFFF;
+                    if (pathLength > pathBytes.length) {
+                        pathBytes = new byte[pathLength];
+                    }
+                    buffer.get(pathBytes, 0, pathLength);
+                    String path = new String(pathBytes, 0, pathLength, StandardCharsets.UTF_8);
+                    mEntries.put(path, new Entry(path, buffer.getLong(), buffer.getLong(), buffer.get(), buffer.getLong()));
+                    mRecordCount++;
+                    mValidLength = buffer.position();
+                }
+            } catch (BufferUnderflowException ex) {
+                //A truncated last record from an aborted write, ignore it
+            }
+        }
+    }
+
+    private DataOutputStream openStream(StandardOpenOption... options) throws IOException {
+        return openStream(mFile, options);
+    }
+
+    private DataOutputStream openStream(File file, StandardOpenOption... options) throws IOException {
+        OutputStream outputStream = Files.newOutputStream(file.toPath(), options);
+
+        return new DataOutputStream(new BufferedOutputStream(outputStream, 64 * 1024));
+    }
+
+    private void rewrite() throws IOException {
+        File tempFile = new File(mFile.getParentFile(), mFile.getName() + ".tmp");
+        int recordCount = 0;
+        try (DataOutputStream outputStream = openStream(tempFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeHeader(outputStream);
+            for (Entry entry : mEntries.values()) {
+                if (entry.mTouched) {
+                    writeEntry(outputStream, entry);
+                    recordCount++;
+                }
+            }
+        }
+
+        Files.move(tempFile.toPath(), mFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        mRecordCount = recordCount;
+        mNewEntries.clear();
+        mValidHeader = true;
+        mValidLength = mFile.length();
+    }
+
+    private void writeEntry(DataOutputStream outputStream, Entry entry) throws IOException {
+        byte[] pathBytes = entry.mPath.getBytes(StandardCharsets.UTF_8);
+        if (pathBytes.length > 0xFFFF) {
+            return;
+        }
+
+        outputStream.writeShort(pathBytes.length);
+        outputStream.write(pathBytes);
+        outputStream.writeLong(entry.mSize);
+        outputStream.writeLong(entry.mLastModified);
+        outputStream.writeByte(entry.mDateSource);
+        outputStream.writeLong(entry.mDate);
+    }
+
+    private void writeHeader(DataOutputStream outputStream) throws IOException {
+        outputStream.writeInt(MAGIC);
+        outputStream.writeInt(VERSION);
+    }
+
+    private static class Entry {
+
+        private final long mDate;
+        private final byte mDateSource;
+        private final long mLastModified;
+        private final String mPath;
+        private final long mSize;
+        private volatile boolean mTouched;
+
+        Entry(String path, long size, long lastModified, byte dateSource, long date) {
+            mPath = path;
+            mSize = size;
+            mLastModified = lastModified;
+            mDateSource = dateSource;
+            mDate = date;
+        }
+    }
+}
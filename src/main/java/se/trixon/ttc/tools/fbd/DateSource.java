@@ -27,7 +27,11 @@ public enum DateSource {
 
     EXIF_ORIGINAL,
     FILE_CREATED,
-    FILE_MODIFIED;
+    FILE_MODIFIED,
+    /**
+     * Parsed from the file name, without any file access.
+     */
+    FILENAME_PATTERN;
     private final ResourceBundle mBundleUI = SystemHelper.getBundle(FbdModule.class, "Bundle");
 
     private DateSource() {
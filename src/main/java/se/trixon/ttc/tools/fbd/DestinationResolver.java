@@ -0,0 +1,131 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.ttc.tools.fbd;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Maps file dates to destination directories, safe for concurrent use.
+ *
+ * Every distinct directory is checked, and created unless it is a dry run,
+ * once per run. When the date pattern has no field smaller than a day, the
+ * formatted name is also remembered per calendar day, so most files skip
+ * the formatting as well. The profile's SimpleDateFormat pattern is kept
+ * for the names, java.time is only used to find the day.
+ *
+ * @author Patrik Karlström
+ */
+class DestinationResolver {
+
+    private static final String SUB_DAY_FIELDS = "aHkKhmsSzZX";
+
+    private final ThreadLocal<SimpleDateFormat> mDateFormat;
+    private final boolean mDayGranular;
+    private final Map<Long, File> mDays = new ConcurrentHashMap<>();
+    private final File mDestDir;
+    private final Map<String, File> mDirs = new ConcurrentHashMap<>();
+    private final boolean mDryRun;
+    private final OperationMetrics mMetrics;
+    private final ZoneId mZoneId;
+
+    /**
+     * Checks if a SimpleDateFormat pattern only has fields of a day or
+     * larger, text in quotes is skipped.
+     *
+     * @param pattern
+     * @return
+     */
+    static boolean isDayGranular(String pattern) {
+        boolean quoted = false;
+
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (!quoted && SUB_DAY_FIELDS.indexOf(c) >= 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    DestinationResolver(Profile profile, OperationMetrics metrics) {
+        SimpleDateFormat dateFormat = profile.getDateFormat();
+        mDateFormat = ThreadLocal.withInitial(() -> (SimpleDateFormat) dateFormat.clone());
+        mDayGranular = isDayGranular(dateFormat.toPattern());
+        mZoneId = dateFormat.getTimeZone().toZoneId();
+        mDestDir = profile.getDestDir();
+        mDryRun = profile.isDryRun();
+        mMetrics = metrics;
+    }
+
+    /**
+     * Returns the destination directory for the date.
+     *
+     * @param date
+     * @return
+     * @throws FileAlreadyExistsException if the directory is a file
+     * @throws IOException if the directory could not be created
+     */
+    File resolve(Date date) throws IOException {
+        try {
+            if (mDayGranular) {
+                long day = Instant.ofEpochMilli(date.getTime()).atZone(mZoneId).toLocalDate().toEpochDay();
+                File dir = mDays.get(day);
+                if (dir == null) {
+                    dir = getDir(mDateFormat.get().format(date));
+                    mDays.put(day, dir);
+                }
+
+                return dir;
+            } else {
+                return getDir(mDateFormat.get().format(date));
+            }
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    private File getDir(String name) {
+        return mDirs.computeIfAbsent(name, key -> {
+            File dir = new File(mDestDir, key);
+            try {
+                if (dir.isFile()) {
+                    throw new FileAlreadyExistsException(dir.getAbsolutePath());
+                } else if (!mDryRun && !dir.isDirectory()) {
+                    long startNanos = System.nanoTime();
+                    FileUtils.forceMkdir(dir);
+                    mMetrics.addMkdir(System.nanoTime() - startNanos);
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+
+            return dir;
+        });
+    }
+}
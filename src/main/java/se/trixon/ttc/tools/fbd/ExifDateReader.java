@@ -0,0 +1,242 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.ttc.tools.fbd;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Reads Exif DateTimeOriginal from the header of a JPEG or TIFF based file
+ * without parsing any other metadata.
+ *
+ * The file is read in small chunks, never more than {@link #MAX_HEADER_SIZE}
+ * bytes, and reading stops as soon as the tag is found. Anything unexpected
+ * returns null so that the caller can fall back to the full metadata parser.
+ *
+ * @author Patrik Karlström
+ */
+class ExifDateReader {
+
+    private static final int CHUNK_SIZE = 8 * 1024;
+    private static final int MAX_HEADER_SIZE = 128 * 1024;
+    private static final int MAX_IFD_ENTRIES = 1024;
+    private static final int TAG_DATETIME_ORIGINAL = 0x9003;
+    private static final int TAG_EXIF_SUB_IFD_OFFSET = 0x8769;
+    private static final int TYPE_ASCII = 2;
+
+    private boolean mBigEndian;
+    private byte[] mBuffer = new byte[CHUNK_SIZE];
+    private final FileChannel mChannel;
+    private boolean mEof;
+    private int mLength;
+
+    /**
+     * @param file the file to read
+     * @return the original date, or null if it could not be located in the
+     * header
+     * @throws IOException
+     */
+    static Date read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return new ExifDateReader(channel).read();
+        }
+    }
+
+    private ExifDateReader(FileChannel channel) {
+        mChannel = channel;
+    }
+
+    private boolean ensure(int end) throws IOException {
+        if (end > MAX_HEADER_SIZE || end < 0) {
+            return false;
+        }
+
+        while (mLength < end && !mEof) {
+            int chunkEnd = Math.min(MAX_HEADER_SIZE, Math.max(end, mLength + CHUNK_SIZE));
+            if (chunkEnd > mBuffer.length) {
+                mBuffer = Arrays.copyOf(mBuffer, chunkEnd);
+            }
+
+            ByteBuffer byteBuffer = ByteBuffer.wrap(mBuffer, mLength, chunkEnd - mLength);
+            int read = mChannel.read(byteBuffer, mLength);
+            if (read < 0) {
+                mEof = true;
+            } else {
+                mLength += read;
+            }
+        }
+
+        return mLength >= end;
+    }
+
+    private int findEntry(int tiffStart, int ifdOffset, int tag) throws IOException {
+        int ifdStart = tiffStart + ifdOffset;
+        if (ifdOffset < 8 || !ensure(ifdStart + 2)) {
+            return -1;
+        }
+
+        int count = u16(ifdStart);
+        if (count > MAX_IFD_ENTRIES || !ensure(ifdStart + 2 + count * 12)) {
+            return -1;
+        }
+
+        for (int i = 0; i < count; i++) {
+            int entry = ifdStart + 2 + i * 12;
+            int entryTag = u16(entry);
+            if (entryTag == tag) {
+                return entry;
+            } else if (entryTag > tag) {
+                //Entries are sorted by tag
+                break;
+            }
+        }
+
+        return -1;
+    }
+
+    private Date parseDate(int offset) {
+        int[] fields = new int[6];
+        int[] widths = {4, 2, 2, 2, 2, 2};
+        int pos = offset;
+
+        for (int i = 0; i < fields.length; i++) {
+            for (int j = 0; j < widths[i]; j++) {
+                int digit = mBuffer[pos++] - '0';
+                if (digit < 0 || digit > 9) {
+                    return null;
+                }
+                fields[i] = fields[i] * 10 + digit;
+            }
+            pos++;
+        }
+
+        try {
+            //metadata-extractor interprets zone-less Exif dates as GMT, do the same
+            LocalDateTime dateTime = LocalDateTime.of(fields[0], fields[1], fields[2], fields[3], fields[4], fields[5]);
+            return Date.from(dateTime.toInstant(ZoneOffset.UTC));
+        } catch (DateTimeException ex) {
+            return null;
+        }
+    }
+
+    private Date read() throws IOException {
+        if (!ensure(4)) {
+            return null;
+        }
+
+        if (u8(0) == 0xFF && u8(1) == 0xD8) {
+            return readJpeg();
+        } else {
+            return readTiff(0);
+        }
+    }
+
+    private Date readJpeg() throws IOException {
+        int pos = 2;
+
+        while (ensure(pos + 4)) {
+            if (u8(pos) != 0xFF) {
+                return null;
+            }
+
+            int marker = u8(pos + 1);
+            if (marker == 0xFF) {
+                pos++;
+                continue;
+            } else if (marker == 0xDA || marker == 0xD9) {
+                //Start of scan or end of image, there is no more metadata
+                return null;
+            }
+
+            mBigEndian = true;
+            int length = u16(pos + 2);
+            int segmentStart = pos + 4;
+
+            if (marker == 0xE1 && length >= 8 && ensure(segmentStart + 6)
+                    && mBuffer[segmentStart] == 'E'
+                    && mBuffer[segmentStart + 1] == 'x'
+                    && mBuffer[segmentStart + 2] == 'i'
+                    && mBuffer[segmentStart + 3] == 'f'
+                    && mBuffer[segmentStart + 4] == 0
+                    && mBuffer[segmentStart + 5] == 0) {
+                return readTiff(segmentStart + 6);
+            }
+
+            pos = segmentStart + length - 2;
+        }
+
+        return null;
+    }
+
+    private Date readTiff(int tiffStart) throws IOException {
+        if (!ensure(tiffStart + 8)) {
+            return null;
+        }
+
+        if (mBuffer[tiffStart] == 'I' && mBuffer[tiffStart + 1] == 'I') {
+            mBigEndian = false;
+        } else if (mBuffer[tiffStart] == 'M' && mBuffer[tiffStart + 1] == 'M') {
+            mBigEndian = true;
+        } else {
+            return null;
+        }
+
+        int ifd0Entry = findEntry(tiffStart, u32(tiffStart + 4), TAG_EXIF_SUB_IFD_OFFSET);
+        if (ifd0Entry < 0) {
+            return null;
+        }
+
+        int entry = findEntry(tiffStart, u32(ifd0Entry + 8), TAG_DATETIME_ORIGINAL);
+        if (entry < 0 || u16(entry + 2) != TYPE_ASCII || u32(entry + 4) < 19) {
+            return null;
+        }
+
+        int valueStart = tiffStart + u32(entry + 8);
+        if (valueStart < tiffStart || !ensure(valueStart + 19)) {
+            return null;
+        }
+
+        return parseDate(valueStart);
+    }
+
+    private int u16(int pos) {
+        if (mBigEndian) {
+            return (u8(pos) << 8) | u8(pos + 1);
+        } else {
+            return (u8(pos + 1) << 8) | u8(pos);
+        }
+    }
+
+    private int u32(int pos) {
+        if (mBigEndian) {
+            return (u16(pos) << 16) | u16(pos + 2);
+        } else {
+            return (u16(pos + 2) << 16) | u16(pos);
+        }
+    }
+
+    private int u8(int pos) {
+        return mBuffer[pos] & 0xFF;
+    }
+}
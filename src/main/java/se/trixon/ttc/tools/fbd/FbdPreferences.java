@@ -0,0 +1,77 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.ttc.tools.fbd;
+
+import com.dlsc.formsfx.model.validators.IntegerRangeValidator;
+import com.dlsc.preferencesfx.model.Category;
+import com.dlsc.preferencesfx.model.Group;
+import com.dlsc.preferencesfx.model.Setting;
+import java.util.ResourceBundle;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.property.SimpleIntegerProperty;
+import se.trixon.almond.util.SystemHelper;
+import se.trixon.ttc.tools.fbd.ui.FbdModule;
+
+/**
+ *
+ * @author Patrik Karlström
+ */
+public class FbdPreferences {
+
+    private final ResourceBundle mBundle = SystemHelper.getBundle(FbdModule.class, "Bundle");
+    private final Category mCategory;
+    private final BooleanProperty mDeviceScheduling = new SimpleBooleanProperty(true);
+    private final IntegerProperty mFastDeviceJobs = new SimpleIntegerProperty(8);
+    private final IntegerProperty mSlowDeviceJobs = new SimpleIntegerProperty(1);
+
+    public FbdPreferences() {
+        mCategory = Category.of("FileByDate",
+                Group.of(mBundle.getString("io_scheduling"),
+                        Setting.of(mBundle.getString("io_device_scheduling"), mDeviceScheduling).customKey("fbd.io.device_scheduling"),
+                        Setting.of(mBundle.getString("io_fast_device_jobs"), mFastDeviceJobs).customKey("fbd.io.fast_device_jobs")
+                                .validate(IntegerRangeValidator.between(1, 64, "errorMessage")),
+                        Setting.of(mBundle.getString("io_slow_device_jobs"), mSlowDeviceJobs).customKey("fbd.io.slow_device_jobs")
+                                .validate(IntegerRangeValidator.between(1, 64, "errorMessage"))
+                )
+        );
+    }
+
+    public Category getCategory() {
+        return mCategory;
+    }
+
+    /**
+     * @return the number of parallel transfers for a solid state device
+     */
+    public int getFastDeviceJobs() {
+        return mFastDeviceJobs.get();
+    }
+
+    /**
+     * @return the number of parallel transfers for a rotational or USB
+     * device
+     */
+    public int getSlowDeviceJobs() {
+        return mSlowDeviceJobs.get();
+    }
+
+    public boolean isDeviceScheduling() {
+        return mDeviceScheduling.get();
+    }
+
+}
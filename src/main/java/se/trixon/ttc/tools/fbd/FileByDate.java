@@ -19,6 +19,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ResourceBundle;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.commons.cli.CommandLine;
@@ -31,6 +32,7 @@ import org.apache.commons.cli.ParseException;
 import se.trixon.almond.util.Dict;
 import se.trixon.almond.util.PomInfo;
 import se.trixon.almond.util.SystemHelper;
+import se.trixon.ttc.tools.LogSink;
 
 /**
  *
@@ -38,11 +40,16 @@ import se.trixon.almond.util.SystemHelper;
  */
 public class FileByDate implements OperationListener {
 
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
     private static String[] sArgs;
     private static final ResourceBundle sBundle = SystemHelper.getBundle(FileByDate.class, "Bundle");
     private static Options sOptions;
     private CommandLine mCommandLine;
+    private long mLastProgressNanos;
+    private final LogSink mLogSink = new LogSink(System.out);
     private final ProfileManager mProfileManager = ProfileManager.getInstance();
+    private boolean mProgressShown;
+    private Verbosity mVerbosity = Verbosity.NORMAL;
 
     public static String getHelp() {
         PrintStream defaultStdOut = System.out;
@@ -99,22 +106,69 @@ public class FileByDate implements OperationListener {
             } else {
                 Profile profile = null;
 
-                if (mCommandLine.hasOption("profile")) {
+                if (mCommandLine.hasOption("run-profile")) {
                     loadProfiles();
-                    profile = mProfileManager.getProfile(mCommandLine.getOptionValue("profile"));
+                    profile = mProfileManager.getProfile(mCommandLine.getOptionValue("run-profile"));
                     if (profile == null) {
                         System.err.println(Dict.Dialog.ERROR_PROFILE_NOT_FOUND.toString());
                         System.exit(1);
                     } else {
                         profile.setDryRun(mCommandLine.hasOption("dry-run"));
+                        profile.setJobsString(mCommandLine.getOptionValue("jobs"));
+                        profile.setTransferEngineString(mCommandLine.getOptionValue("transfer"));
+                        profile.setFileOrderString(mCommandLine.getOptionValue("file-order"));
+                        profile.setPlanFileString(mCommandLine.getOptionValue("plan"));
+                        profile.setApplyFileString(mCommandLine.getOptionValue("apply"));
+                        if (mCommandLine.hasOption("stream")) {
+                            profile.setStreaming(true);
+                        }
+                        if (mCommandLine.hasOption("date-cache")) {
+                            profile.setDateCache(true);
+                        }
+                        if (mCommandLine.hasOption("incremental")) {
+                            profile.setIncremental(true);
+                        }
+                        if (mCommandLine.hasOption("journal")) {
+                            profile.setJournal(true);
+                        }
+                        if (mCommandLine.hasOption("resume")) {
+                            profile.setJournal(true);
+                            profile.setResume(true);
+                        }
                     }
                 } else {
                     profile = new Profile(mCommandLine);
                 }
 
                 if (profile.isValid()) {
-                    Operation operation = new Operation(this, profile);
-                    operation.start();
+                    if (mCommandLine.hasOption("quiet")) {
+                        mVerbosity = Verbosity.QUIET;
+                    } else if (mCommandLine.hasOption("progress-only")) {
+                        mVerbosity = Verbosity.PROGRESS_ONLY;
+                    }
+                    boolean watch = mCommandLine.hasOption("watch") && profile.getPlanFile() == null && profile.getApplyFile() == null;
+                    Watcher watcher = watch ? new Watcher(this, profile) : null;
+
+                    //Ctrl-C does not interrupt the main thread, a watch is stopped and its operation closed here before the output is drained
+                    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                        if (watcher != null) {
+                            watcher.stop();
+                        }
+                        mLogSink.close();
+                    }));
+
+                    if (watcher != null) {
+                        try {
+                            watcher.start();
+                        } catch (IOException ex) {
+                            System.err.println(ex.getLocalizedMessage());
+                            System.exit(1);
+                        }
+                    } else {
+                        Operation operation = new Operation(this, profile);
+                        operation.start();
+                    }
+                    mLogSink.close();
                 } else {
                     System.out.println(profile.getValidationError());
                     System.out.println(Dict.ABORTING.toString());
@@ -123,8 +177,19 @@ public class FileByDate implements OperationListener {
         }
     }
 
+    @Override
+    public boolean isLogEnabled() {
+        return mVerbosity == Verbosity.NORMAL;
+    }
+
     @Override
     public void onOperationError(String message) {
+        //Errors are printed at every verbosity, on a line of their own after a progress counter
+        if (mProgressShown) {
+            mLogSink.println();
+            mProgressShown = false;
+        }
+        mLogSink.println(message);
     }
 
     @Override
@@ -133,17 +198,30 @@ public class FileByDate implements OperationListener {
 
     @Override
     public void onOperationFinished(String message, int fileCount) {
-        System.out.println(Dict.DONE.toString());
+        if (mVerbosity != Verbosity.QUIET) {
+            mLogSink.println(Dict.DONE.toString());
+        }
     }
 
     @Override
     public void onOperationInterrupted() {
-        System.out.println(Dict.OPERATION_INTERRUPTED.toString());
+        mLogSink.println();
+        mLogSink.println(Dict.OPERATION_INTERRUPTED.toString());
     }
 
     @Override
     public void onOperationLog(String message) {
-        System.out.println(message);
+        if (mVerbosity == Verbosity.NORMAL) {
+            mLogSink.println(message);
+        }
+    }
+
+    @Override
+    public void onOperationMetrics(OperationMetrics metrics) {
+        if (mVerbosity != Verbosity.QUIET) {
+            mLogSink.println();
+            mLogSink.println(metrics.toString());
+        }
     }
 
     @Override
@@ -152,6 +230,14 @@ public class FileByDate implements OperationListener {
 
     @Override
     public void onOperationProgress(int value, int max) {
+        if (mVerbosity == Verbosity.PROGRESS_ONLY) {
+            long now = System.nanoTime();
+            if (value == max || now - mLastProgressNanos >= PROGRESS_INTERVAL_NANOS) {
+                mLastProgressNanos = now;
+                mLogSink.print(String.format("\r%d/%d", value, max));
+                mProgressShown = true;
+            }
+        }
     }
 
     @Override
@@ -233,6 +319,25 @@ public class FileByDate implements OperationListener {
                 .optionalArg(false)
                 .build();
 
+        Option filenameRegex = Option.builder("fr")
+                .longOpt("filename-regex")
+                .desc(sBundle.getString("opt_filename_regex_desc"))
+                .hasArg()
+                .optionalArg(false)
+                .build();
+
+        Option filenameDatePattern = Option.builder("fd")
+                .longOpt("filename-date-pattern")
+                .desc(sBundle.getString("opt_filename_date_pattern_desc"))
+                .hasArg()
+                .optionalArg(false)
+                .build();
+
+        Option dateCache = Option.builder("dc")
+                .longOpt("date-cache")
+                .desc(sBundle.getString("opt_date_cache_desc"))
+                .build();
+
         Option caseBase = Option.builder("cb")
                 .longOpt("case-base")
                 .desc(sBundle.getString("opt_case_base_desc"))
@@ -247,6 +352,76 @@ public class FileByDate implements OperationListener {
                 .optionalArg(false)
                 .build();
 
+        Option jobs = Option.builder("j")
+                .longOpt("jobs")
+                .desc(sBundle.getString("opt_jobs_desc"))
+                .hasArg()
+                .optionalArg(false)
+                .build();
+
+        Option stream = Option.builder("st")
+                .longOpt("stream")
+                .desc(sBundle.getString("opt_stream_desc"))
+                .build();
+
+        Option transfer = Option.builder("te")
+                .longOpt("transfer")
+                .desc(sBundle.getString("opt_transfer_desc"))
+                .hasArg()
+                .optionalArg(false)
+                .build();
+
+        Option fileOrder = Option.builder("fo")
+                .longOpt("file-order")
+                .desc(sBundle.getString("opt_file_order_desc"))
+                .hasArg()
+                .optionalArg(false)
+                .build();
+
+        Option incremental = Option.builder("i")
+                .longOpt("incremental")
+                .desc(sBundle.getString("opt_incremental_desc"))
+                .build();
+
+        Option journal = Option.builder("jn")
+                .longOpt("journal")
+                .desc(sBundle.getString("opt_journal_desc"))
+                .build();
+
+        Option resume = Option.builder("rs")
+                .longOpt("resume")
+                .desc(sBundle.getString("opt_resume_desc"))
+                .build();
+
+        Option watch = Option.builder("w")
+                .longOpt("watch")
+                .desc(sBundle.getString("opt_watch_desc"))
+                .build();
+
+        Option plan = Option.builder("pl")
+                .longOpt("plan")
+                .desc(sBundle.getString("opt_plan_desc"))
+                .hasArg()
+                .optionalArg(false)
+                .build();
+
+        Option apply = Option.builder("ap")
+                .longOpt("apply")
+                .desc(sBundle.getString("opt_apply_desc"))
+                .hasArg()
+                .optionalArg(false)
+                .build();
+
+        Option quiet = Option.builder("q")
+                .longOpt("quiet")
+                .desc(sBundle.getString("opt_quiet_desc"))
+                .build();
+
+        Option progressOnly = Option.builder("po")
+                .longOpt("progress-only")
+                .desc(sBundle.getString("opt_progress_only_desc"))
+                .build();
+
         Option profile = Option.builder("rp")
                 .longOpt("run-profile")
                 .hasArg()
@@ -278,10 +453,27 @@ public class FileByDate implements OperationListener {
 
         sOptions.addOption(datePattern);
         sOptions.addOption(dateSource);
+        sOptions.addOption(filenameRegex);
+        sOptions.addOption(filenameDatePattern);
+        sOptions.addOption(dateCache);
 
         sOptions.addOption(caseBase);
         sOptions.addOption(caseExt);
 
+        sOptions.addOption(jobs);
+        sOptions.addOption(stream);
+        sOptions.addOption(transfer);
+        sOptions.addOption(fileOrder);
+        sOptions.addOption(incremental);
+        sOptions.addOption(journal);
+        sOptions.addOption(resume);
+        sOptions.addOption(watch);
+        sOptions.addOption(plan);
+        sOptions.addOption(apply);
+
+        sOptions.addOption(quiet);
+        sOptions.addOption(progressOnly);
+
         sOptions.addOption(listProfiles);
         sOptions.addOption(viewProfile);
         sOptions.addOption(profile);
@@ -306,4 +498,8 @@ public class FileByDate implements OperationListener {
             Logger.getLogger(FileByDate.class.getName()).log(Level.SEVERE, null, ex);
         }
     }
+
+    private enum Verbosity {
+        NORMAL, PROGRESS_ONLY, QUIET;
+    }
 }
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.ttc.tools.fbd;
+
+import java.util.Collections;
+import java.util.ResourceBundle;
+import se.trixon.almond.util.SystemHelper;
+import se.trixon.ttc.tools.fbd.ui.FbdModule;
+
+/**
+ * The order in which the files of a source are processed.
+ *
+ * @author Patrik Karlström
+ */
+public enum FileOrder {
+
+    /**
+     * Sorted by path.
+     */
+    NAME {
+        @Override
+        void sort(ScannedFileList files) {
+            Collections.sort(files);
+        }
+    },
+    /**
+     * Sorted by inode number, which on most Unix file systems follows the
+     * placement on disk closer than the name does. Uses the inode numbers
+     * read while scanning, keeps the listing order where they are not
+     * available.
+     */
+    INODE {
+        @Override
+        void sort(ScannedFileList files) {
+            files.sortIndexes((index1, index2) -> Long.compare(files.getInode(index1), files.getInode(index2)));
+        }
+    },
+    /**
+     * The order of the directory listings, left as it is.
+     */
+    LISTING {
+        @Override
+        void sort(ScannedFileList files) {
+        }
+    };
+
+    private final ResourceBundle mBundleUI = SystemHelper.getBundle(FbdModule.class, "Bundle");
+
+    private FileOrder() {
+    }
+
+    @Override
+    public String toString() {
+        return mBundleUI.getString("fileOrder_" + name().toLowerCase());
+    }
+
+    abstract void sort(ScannedFileList files);
+}
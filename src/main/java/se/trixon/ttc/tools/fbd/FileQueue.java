@@ -0,0 +1,98 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.ttc.tools.fbd;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import se.trixon.ttc.tools.OperationContext;
+
+/**
+ * Bounded hand-off between the directory walker and the processing stage.
+ *
+ * The walker blocks when the queue is full, so memory use does not depend on
+ * the size of the source tree. A consumer that stops early abandons the
+ * queue, which makes the walker's puts return at once.
+ *
+ * @author Patrik Karlström
+ */
+class FileQueue implements Iterator<File> {
+
+    private static final File END = new File("");
+
+    private volatile boolean mAbandoned;
+    private final OperationContext mContext;
+    private File mNext;
+    private final BlockingQueue<File> mQueue;
+
+    FileQueue(OperationContext context, int capacity) {
+        mContext = context;
+        mQueue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (mNext == null) {
+            try {
+                mNext = mQueue.take();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                mNext = END;
+            }
+        }
+
+        return mNext != END;
+    }
+
+    @Override
+    public File next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        File file = mNext;
+        mNext = null;
+
+        return file;
+    }
+
+    /**
+     * Called by the consumer when it stops taking files.
+     */
+    void abandon() {
+        mAbandoned = true;
+        mQueue.clear();
+    }
+
+    void close() {
+        put(END);
+    }
+
+    void put(File file) {
+        try {
+            while (!mAbandoned && !mQueue.offer(file, 100, TimeUnit.MILLISECONDS)) {
+                if (mContext.isCancelled()) {
+                    mQueue.clear();
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
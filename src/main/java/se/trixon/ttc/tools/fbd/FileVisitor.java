@@ -20,29 +20,35 @@ import java.io.IOException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Path;
 import java.nio.file.PathMatcher;
-import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import se.trixon.ttc.tools.DirectoryScanner;
+import se.trixon.ttc.tools.OperationContext;
 
 /**
  *
  * @author Patrik Karlström
  */
-public class FileVisitor extends SimpleFileVisitor<Path> {
+public class FileVisitor implements DirectoryScanner.Visitor {
 
-    private List<File> mFiles = new ArrayList<>();
+    private final OperationContext mContext;
+    private final Consumer<File> mFileSink;
     private boolean mInterrupted;
     private final Operation mOperation;
     private final OperationListener mOperationListener;
     private final PathMatcher mPathMatcher;
+    private final long mSince;
 
-    public FileVisitor(PathMatcher pathMatcher, List<File> paths, Operation operation) {
-        mFiles = paths;
+    public FileVisitor(PathMatcher pathMatcher, Consumer<File> fileSink, Operation operation) {
+        mFileSink = fileSink;
         mPathMatcher = pathMatcher;
         mOperation = operation;
         mOperationListener = operation.getListener();
+        mContext = operation.getContext();
+
+        Profile profile = operation.getProfile();
+        mSince = profile.isIncremental() ? profile.getLastRun() : 0;
     }
 
     public boolean isInterrupted() {
@@ -50,37 +56,61 @@ public class FileVisitor extends SimpleFileVisitor<Path> {
     }
 
     @Override
-    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
-        try {
-            TimeUnit.NANOSECONDS.sleep(1);
-        } catch (InterruptedException ex) {
+    public FileVisitResult visitDirectory(Path dir, BasicFileAttributes attrs, List<DirectoryScanner.Entry> files) {
+        if (mContext.isCancelled()) {
             mInterrupted = true;
             return FileVisitResult.TERMINATE;
         }
 
-        mOperationListener.onOperationLog(dir.toString());
-        String[] filePaths = dir.toFile().list();
+        if (!wantsEntries(dir, attrs)) {
+            return FileVisitResult.CONTINUE;
+        }
+
+        if (mOperationListener.isLogEnabled()) {
+            mOperationListener.onOperationLog(dir.toString());
+        }
+
+        for (DirectoryScanner.Entry entry : files) {
+            if (mContext.isCancelled()) {
+                mInterrupted = true;
+                return FileVisitResult.TERMINATE;
+            }
+
+            Path path = entry.getPath();
+            if (!mPathMatcher.matches(path.getFileName())) {
+                continue;
+            }
 
-        if (filePaths != null && filePaths.length > 0) {
-            for (String fileName : filePaths) {
+            if (entry.getAttributes().isSymbolicLink()) {
+                //Links to files are picked up whether links are followed or not
                 try {
-                    TimeUnit.NANOSECONDS.sleep(1);
-                } catch (InterruptedException ex) {
-                    mInterrupted = true;
-                    return FileVisitResult.TERMINATE;
-                }
-                File file = new File(dir.toFile(), fileName);
-                if (file.isFile() && mPathMatcher.matches(file.toPath().getFileName())) {
-                    mFiles.add(file);
+                    entry = DirectoryScanner.readEntry(path);
+                } catch (IOException ex) {
+                    continue;
                 }
             }
+
+            if (entry.getAttributes().isRegularFile() && (mSince == 0 || isChangedFile(entry))) {
+                mFileSink.accept(new ScannedFile(path.toString(), entry.getAttributes(), entry.getInode()));
+            }
         }
 
         return FileVisitResult.CONTINUE;
     }
 
     @Override
-    public FileVisitResult visitFileFailed(Path file, IOException exc) {
-        return FileVisitResult.CONTINUE;
+    public boolean wantsEntries(Path dir, BasicFileAttributes attrs) {
+        //A directory's mtime changes when entries are added, removed or renamed, not when a subdirectory changes
+        return mSince == 0 || attrs.lastModifiedTime().toMillis() >= mSince;
+    }
+
+    /**
+     * A file copied or moved in keeps its mtime but gets a new ctime, use
+     * the latest of the two where ctime is available.
+     */
+    private boolean isChangedFile(DirectoryScanner.Entry entry) {
+        long changed = Math.max(entry.getAttributes().lastModifiedTime().toMillis(), entry.getChangeTime().toMillis());
+
+        return changed >= mSince;
     }
 }
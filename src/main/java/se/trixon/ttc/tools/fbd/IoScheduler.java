@@ -0,0 +1,247 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.ttc.tools.fbd;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs transfers with a concurrency limit per storage device.
+ *
+ * Work is grouped by the file stores of its source and destination and
+ * every group gets a pool of its own, as many threads as the slowest of
+ * the two devices allows. Groups on different devices run side by side,
+ * groups sharing a device also share its permits. Rotational and USB
+ * devices, detected through /sys/block, get the slow device limit and all
+ * others the fast one. Results of every group are taken from one queue.
+ * Reads from a single device that run on another executor, like the date
+ * lookups ahead of the transfers, can hold a permit of that device too.
+ *
+ * Submitting is not thread-safe, only the thread that takes the results
+ * may submit.
+ *
+ * @param <V> the result type
+ *
+ * @author Patrik Karlström
+ */
+class IoScheduler<V> {
+
+    private final BlockingQueue<Future<V>> mCompletionQueue = new LinkedBlockingQueue<>();
+    private final boolean mDeviceScheduling;
+    private final Map<FileStore, Device> mDevices = new HashMap<>();
+    private final List<ExecutorService> mExecutorServices = new ArrayList<>();
+    private final int mFastDeviceJobs;
+    private final int mMaxJobs;
+    private final Map<List<FileStore>, CompletionService<V>> mServices = new HashMap<>();
+    private final int mSlowDeviceJobs;
+
+    /**
+     * Checks if the device behind the file store is rotational or attached
+     * through USB. Anything that can not be found in /sys/block is treated
+     * as fast.
+     *
+     * @param fileStore
+     * @return
+     */
+    static boolean isSlowDevice(FileStore fileStore) {
+        String name = fileStore.name();
+        if (!name.startsWith("/dev/")) {
+            return false;
+        }
+
+        try {
+            //Follows /dev/mapper and /dev/disk links to the kernel name
+            String deviceName = Paths.get(name).toRealPath().getFileName().toString();
+            Path sysDevice = Paths.get("/sys/class/block", deviceName).toRealPath();
+            if (sysDevice.toString().contains("/usb")) {
+                return true;
+            }
+
+            Path rotational = sysDevice.resolve("queue/rotational");
+            if (!Files.exists(rotational)) {
+                //A partition, the queue belongs to its disk
+                rotational = sysDevice.getParent().resolve("queue/rotational");
+            }
+
+            return "1".equals(new String(Files.readAllBytes(rotational), StandardCharsets.US_ASCII).trim());
+        } catch (IOException | InvalidPathException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * @param maxJobs the most threads for one group
+     * @param preferences
+     */
+    IoScheduler(int maxJobs, FbdPreferences preferences) {
+        mMaxJobs = maxJobs;
+        mDeviceScheduling = preferences.isDeviceScheduling();
+        mFastDeviceJobs = preferences.getFastDeviceJobs();
+        mSlowDeviceJobs = preferences.getSlowDeviceJobs();
+    }
+
+    /**
+     * Waits for the tasks of every group after a shutdown.
+     *
+     * @throws InterruptedException
+     */
+    void awaitTermination() throws InterruptedException {
+        for (ExecutorService executorService : mExecutorServices) {
+            executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        }
+    }
+
+    /**
+     * Wraps work that reads from one device so that it holds a permit of
+     * the device while it runs, on whichever executor it is given to.
+     *
+     * @param fileStore the device or null
+     * @param callable
+     * @return the callable itself for an unknown device
+     */
+    Callable<V> limit(FileStore fileStore, Callable<V> callable) {
+        if (!mDeviceScheduling || fileStore == null) {
+            return callable;
+        }
+
+        Device device = getDevice(fileStore);
+
+        return () -> {
+            device.mPermits.acquire();
+            try {
+                return callable.call();
+            } finally {
+                device.mPermits.release();
+            }
+        };
+    }
+
+    Future<V> poll() {
+        return mCompletionQueue.poll();
+    }
+
+    /**
+     * Lets running tasks complete, queued tasks are still run.
+     */
+    void shutdown() {
+        for (ExecutorService executorService : mExecutorServices) {
+            executorService.shutdown();
+        }
+    }
+
+    /**
+     * Queues work in the group of its devices, work with an unknown device
+     * goes to a group without device limits.
+     *
+     * @param sourceFileStore the source device or null
+     * @param destFileStore the destination device or null
+     * @param callable
+     */
+    void submit(FileStore sourceFileStore, FileStore destFileStore, Callable<V> callable) {
+        if (!mDeviceScheduling || sourceFileStore == null || destFileStore == null) {
+            getService(null, mMaxJobs).submit(callable);
+            return;
+        }
+
+        Device source = getDevice(sourceFileStore);
+        Device dest = getDevice(destFileStore);
+
+        if (source == dest) {
+            getService(Arrays.asList(sourceFileStore), Math.min(mMaxJobs, source.mLimit)).submit(() -> {
+                source.mPermits.acquire();
+                try {
+                    return callable.call();
+                } finally {
+                    source.mPermits.release();
+                }
+            });
+        } else {
+            //Always take the permits of two devices in the same order
+            Device first = source.mOrder < dest.mOrder ? source : dest;
+            Device second = first == source ? dest : source;
+            int threads = Math.min(mMaxJobs, Math.min(source.mLimit, dest.mLimit));
+
+            getService(Arrays.asList(sourceFileStore, destFileStore), threads).submit(() -> {
+                first.mPermits.acquire();
+                try {
+                    second.mPermits.acquire();
+                    try {
+                        return callable.call();
+                    } finally {
+                        second.mPermits.release();
+                    }
+                } finally {
+                    first.mPermits.release();
+                }
+            });
+        }
+    }
+
+    Future<V> take() throws InterruptedException {
+        return mCompletionQueue.take();
+    }
+
+    private Device getDevice(FileStore fileStore) {
+        return mDevices.computeIfAbsent(fileStore, key -> new Device(mDevices.size(), isSlowDevice(key) ? mSlowDeviceJobs : mFastDeviceJobs));
+    }
+
+    private CompletionService<V> getService(List<FileStore> key, int threads) {
+        return mServices.computeIfAbsent(key, k -> {
+            ExecutorService executorService = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "FileByDate transfer");
+                thread.setDaemon(true);
+
+                return thread;
+            });
+            mExecutorServices.add(executorService);
+
+            return new ExecutorCompletionService<>(executorService, mCompletionQueue);
+        });
+    }
+
+    private static class Device {
+
+        private final int mLimit;
+        private final int mOrder;
+        private final Semaphore mPermits;
+
+        Device(int order, int limit) {
+            mOrder = order;
+            mLimit = limit;
+            mPermits = new Semaphore(limit);
+        }
+    }
+}
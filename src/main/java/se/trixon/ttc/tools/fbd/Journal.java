@@ -0,0 +1,279 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.ttc.tools.fbd;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.commons.io.input.CountingInputStream;
+
+/**
+ * Append-only write-ahead log of the transfers in a run.
+ *
+ * An intent record (sequence number, source and destination) is written
+ * before a transfer starts and a done record (sequence number) when it has
+ * finished. The intent of a transfer that could leave a partial destination
+ * behind is forced to disk before the transfer starts, which costs one
+ * force per copied file when files are copied one at a time. Parallel jobs
+ * share the cost, one force covers every intent written so far and runs
+ * outside the journal lock, so intents written while it runs are covered by
+ * the next one. A rename within a file store is atomic and does not wait
+ * for its intent. Done records are only flushed in batches, a lost done
+ * record just means the transfer is checked again on resume.
+ *
+ * @author Patrik Karlström
+ */
+class Journal {
+
+    private static final int DONE_BATCH = 256;
+    private static final byte DONE = 'D';
+    private static final byte INTENT = 'I';
+    private static final int MAGIC = 0x46424a4c;
+    private static final int VERSION = 1;
+
+    private final Set<String> mCompletedSources = new HashSet<>();
+    private volatile int mDurableSequence = -1;
+    private final File mFile;
+    private FileChannel mFileChannel;
+    private final Object mForceLock = new Object();
+    private DataOutputStream mOutputStream;
+    private int mPendingDone;
+    private final Map<Integer, Entry> mPendingEntries = new LinkedHashMap<>();
+    private int mSequence;
+    private long mValidLength;
+
+    /**
+     * Opens the journal for writing.
+     *
+     * The transfers an earlier run left unfinished are always returned by
+     * {@link #getPendingEntries()}, so that their partial destinations can be
+     * removed before anything else is written. The earlier records are kept
+     * until then, an earlier journal without unfinished transfers is
+     * discarded unless resuming.
+     *
+     * @param file
+     * @param resume true to also skip the transfers that an earlier run
+     * recorded as done
+     * @return
+     * @throws IOException
+     */
+    static Journal open(File file, boolean resume) throws IOException {
+        Journal journal = new Journal(file);
+        boolean append = journal.load() && (resume || !journal.mPendingEntries.isEmpty());
+        if (!resume) {
+            journal.mCompletedSources.clear();
+        }
+        journal.openOutput(append);
+
+        return journal;
+    }
+
+    private Journal(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Closes the journal, a complete run has nothing left to resume and
+     * removes the file.
+     *
+     * @param complete
+     * @throws IOException
+     */
+    synchronized void close(boolean complete) throws IOException {
+        mOutputStream.flush();
+        mFileChannel.force(false);
+        mOutputStream.close();
+
+        if (complete) {
+            mFile.delete();
+        }
+    }
+
+    /**
+     * Records that the transfer with the given sequence number is finished.
+     *
+     * @param sequence
+     * @throws IOException
+     */
+    synchronized void done(int sequence) throws IOException {
+        mOutputStream.writeByte(DONE);
+        mOutputStream.writeInt(sequence);
+
+        if (++mPendingDone >= DONE_BATCH) {
+            mPendingDone = 0;
+            mOutputStream.flush();
+        }
+    }
+
+    /**
+     * @return the transfers of an earlier run that were started but not
+     * recorded as done
+     */
+    synchronized List<Entry> getPendingEntries() {
+        return new ArrayList<>(mPendingEntries.values());
+    }
+
+    /**
+     * Writes an intent record.
+     *
+     * @param sourceFile
+     * @param destFile
+     * @return the sequence number of the record
+     * @throws IOException
+     */
+    synchronized int intent(File sourceFile, File destFile) throws IOException {
+        int sequence = mSequence++;
+        mOutputStream.writeByte(INTENT);
+        mOutputStream.writeInt(sequence);
+        mOutputStream.writeUTF(sourceFile.getAbsolutePath());
+        mOutputStream.writeUTF(destFile.getAbsolutePath());
+
+        return sequence;
+    }
+
+    /**
+     * @param sourceFile
+     * @return true if an earlier run recorded sourceFile as done
+     */
+    synchronized boolean isCompleted(File sourceFile) {
+        return mCompletedSources.contains(sourceFile.getAbsolutePath());
+    }
+
+    /**
+     * Makes sure that the intent with the given sequence number is on disk.
+     *
+     * @param sequence
+     * @throws IOException
+     */
+    void sync(int sequence) throws IOException {
+        int written;
+        synchronized (this) {
+            if (mDurableSequence >= sequence) {
+                return;
+            }
+
+            mOutputStream.flush();
+            written = mSequence - 1;
+        }
+
+        //One force at a time, a worker that waited for it may already be covered
+        synchronized (mForceLock) {
+            if (mDurableSequence < sequence) {
+                mFileChannel.force(false);
+                mDurableSequence = written;
+            }
+        }
+    }
+
+    private boolean load() throws IOException {
+        if (!mFile.isFile()) {
+            return false;
+        }
+
+        Map<Integer, Entry> entries = new LinkedHashMap<>();
+        boolean validHeader = false;
+        CountingInputStream countingInputStream = new CountingInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+        try (DataInputStream dataInputStream = new DataInputStream(countingInputStream)) {
+            if (dataInputStream.readInt() != MAGIC || dataInputStream.readInt() != VERSION) {
+                return false;
+            }
+            validHeader = true;
+            mValidLength = countingInputStream.getByteCount();
+
+            while (true) {
+                byte type = dataInputStream.readByte();
+                int sequence = dataInputStream.readInt();
+
+                if (type == INTENT) {
+                    Entry entry = new Entry(new File(dataInputStream.readUTF()), new File(dataInputStream.readUTF()), sequence);
+                    entries.put(sequence, entry);
+                } else if (type == DONE) {
+                    Entry entry = entries.remove(sequence);
+                    if (entry != null) {
+                        mCompletedSources.add(entry.getSourceFile().getAbsolutePath());
+                    }
+                } else {
+                    break;
+                }
+
+                mSequence = Math.max(mSequence, sequence + 1);
+                mValidLength = countingInputStream.getByteCount();
+            }
+        } catch (EOFException ex) {
+            //A record cut short by the crash, everything before it is valid
+        }
+
+        mPendingEntries.putAll(entries);
+
+        return validHeader;
+    }
+
+    private void openOutput(boolean append) throws IOException {
+        FileOutputStream fileOutputStream = new FileOutputStream(mFile, append);
+        mFileChannel = fileOutputStream.getChannel();
+        mOutputStream = new DataOutputStream(new BufferedOutputStream(fileOutputStream));
+
+        if (append) {
+            //Drop a partial record at the end so that new records follow a complete one
+            mFileChannel.truncate(mValidLength);
+            mFileChannel.position(mFileChannel.size());
+        } else {
+            mOutputStream.writeInt(MAGIC);
+            mOutputStream.writeInt(VERSION);
+        }
+
+        mOutputStream.flush();
+        mFileChannel.force(true);
+    }
+
+    static class Entry {
+
+        private final File mDestFile;
+        private final int mSequence;
+        private final File mSourceFile;
+
+        Entry(File sourceFile, File destFile, int sequence) {
+            mSourceFile = sourceFile;
+            mDestFile = destFile;
+            mSequence = sequence;
+        }
+
+        File getDestFile() {
+            return mDestFile;
+        }
+
+        int getSequence() {
+            return mSequence;
+        }
+
+        File getSourceFile() {
+            return mSourceFile;
+        }
+    }
+}
@@ -22,26 +22,54 @@ import com.drew.metadata.Metadata;
 import com.drew.metadata.exif.ExifSubIFDDirectory;
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.FileVisitOption;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
 import java.nio.file.Files;
 import java.nio.file.PathMatcher;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.text.SimpleDateFormat;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
-import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 import se.trixon.almond.util.Dict;
 import se.trixon.almond.util.SystemHelper;
 import se.trixon.almond.util.Xlog;
+import se.trixon.ttc.Preferences;
+import se.trixon.ttc.tools.DirectoryScanner;
+import se.trixon.ttc.tools.OperationContext;
 
 /**
  *
@@ -50,22 +78,71 @@ import se.trixon.almond.util.Xlog;
 public class Operation {
 
     private static final Logger LOGGER = Logger.getLogger(Operation.class.getName());
+    private static final int STREAM_QUEUE_CAPACITY = 4096;
 
     private final ResourceBundle mBundle;
+    private final Set<File> mClaimedDestFiles = new HashSet<>();
+    private final OperationContext mContext;
+    private DateCache mDateCache;
+    private final DestinationResolver mDestinationResolver;
     private final List<Exception> mExceptions = new ArrayList<>();
-    private final List<File> mFiles = new ArrayList<>();
+    private final List<ScannedFileSorter> mFileSorters = new ArrayList<>();
+    private final Map<File, FileStore> mFileStores = new ConcurrentHashMap<>();
+    private final ScannedFileList mFiles = new ScannedFileList();
     private boolean mInterrupted;
+    private Journal mJournal;
     private final OperationListener mListener;
+    private final boolean mLogEnabled;
+    private final OperationMetrics mMetrics = new OperationMetrics();
+    private Plan mPlan;
     private final Profile mProfile;
+    private int mRetryCount;
+    private boolean mSession;
+    private long mSessionNanos;
+    private final List<File> mSourceDirs;
+    private final String[] mSourcePaths;
 
     public Operation(OperationListener operationListener, Profile profile) {
+        this(operationListener, profile, new OperationContext());
+    }
+
+    public Operation(OperationListener operationListener, Profile profile, OperationContext context) {
         mListener = operationListener;
+        mLogEnabled = operationListener.isLogEnabled();
         mProfile = profile;
+        mContext = context;
         mBundle = SystemHelper.getBundle(Operation.class, "Bundle");
+        mDestinationResolver = new DestinationResolver(profile, mMetrics);
+        mSourceDirs = profile.getSourceDirs();
+        mSourcePaths = new String[mSourceDirs.size()];
+        for (int i = 0; i < mSourcePaths.length; i++) {
+            mSourcePaths[i] = mSourceDirs.get(i).getAbsolutePath() + File.separator;
+        }
+        mMetrics.setSourceDirs(mSourceDirs);
     }
 
     public void start() {
+        start(null);
+    }
+
+    /**
+     * Processes the given files instead of the ones found in the source
+     * directory. Only a walk of the source directory moves the last run of
+     * the profile.
+     *
+     * @param files the files to process, or null to walk the source
+     * directory
+     */
+    public void start(List<File> files) {
         long startTime = System.currentTimeMillis();
+        long startNanos = mSession ? mSessionNanos : System.nanoTime();
+
+        //Left from an earlier start in the same session
+        mInterrupted = false;
+        mRetryCount = 0;
+        mFiles.clear();
+        mClaimedDestFiles.clear();
+        mContext.setProgress(0);
 
         Date date = new Date(startTime);
         SimpleDateFormat dateFormat = new SimpleDateFormat();
@@ -73,97 +150,56 @@ public class Operation {
         mListener.onOperationProcessingStarted();
         mListener.onOperationLog(dateFormat.format(date));
 
-        mInterrupted = !generateFileList();
         String status;
+        if (!mSession) {
+            openDateCache();
+            openJournal();
+        }
+        openPlan();
 
-        if (!mInterrupted && !mFiles.isEmpty()) {
-            mListener.onOperationLog(String.format(mBundle.getString("found_count"), mFiles.size()));
-            mListener.onOperationLog("");
-            status = Dict.PROCESSING.toString();
-            mListener.onOperationLog(status);
-
-            int progress = 0;
-            SimpleDateFormat simpleDateFormat = mProfile.getDateFormat();
-            for (File sourceFile : mFiles) {
-                try {
-                    try {
-                        TimeUnit.MILLISECONDS.sleep(1);
-                    } catch (InterruptedException ex) {
-                        mInterrupted = true;
-                        break;
-                    }
-
-                    String fileDate = simpleDateFormat.format(getDate(sourceFile));
-                    File destDir = new File(mProfile.getDestDir(), fileDate);
-
-                    if (destDir.isFile()) {
-                        mListener.onOperationLog(String.format(Dict.Dialog.ERROR_DEST_DIR_IS_FILE.toString(), destDir.getAbsolutePath()));
-                        break;
-                    } else if (!destDir.exists() && !mProfile.isDryRun()) {
-                        FileUtils.forceMkdir(destDir);
-                    }
-
-                    String destFilename = sourceFile.getName();
-                    String base = FilenameUtils.getBaseName(destFilename);
-                    String ext = FilenameUtils.getExtension(destFilename);
-                    NameCase caseBase = mProfile.getCaseBase();
-                    NameCase caseExt = mProfile.getCaseExt();
-
-                    if (caseBase != NameCase.UNCHANGED || caseExt != NameCase.UNCHANGED) {
-                        if (caseBase == NameCase.LOWER) {
-                            base = base.toLowerCase();
-                        } else if (caseBase == NameCase.UPPER) {
-                            base = base.toUpperCase();
-                        }
-
-                        if (caseExt == NameCase.LOWER) {
-                            ext = ext.toLowerCase();
-                        } else if (caseBase == NameCase.UPPER) {
-                            ext = ext.toUpperCase();
-                        }
-
-                        if (base.length() == 0) {
-                            destFilename = String.format(".%s", ext);
-                        } else if (ext.length() == 0) {
-                            destFilename = base;
-                        } else {
-                            destFilename = String.format("%s.%s", base, ext);
-                        }
-                    }
-
-                    File destFile = new File(destDir, destFilename);
-                    String log;
-                    if (destFile.exists() && !mProfile.isReplaceExisting()) {
-                        log = String.format(Dict.Dialog.ERROR_DEST_FILE_EXISTS.toString(), destFile.getAbsolutePath());
-                    } else {
-                        Command command = mProfile.getCommand();
-                        String cmd = command == Command.COPY ? "cp" : "mv";
-                        log = String.format("%s %s  %s", cmd, sourceFile.getAbsolutePath(), destFile.toString());
-
-                        if (destDir.canWrite()) {
-                            if (!mProfile.isDryRun()) {
-                                if (command == Command.COPY) {
-                                    FileUtils.copyFile(sourceFile, destFile);
-                                } else if (command == Command.MOVE) {
-                                    if (File.listRoots().length > 1 || destFile.exists()) {
-                                        FileUtils.copyFile(sourceFile, destFile);
-                                        FileUtils.deleteQuietly(sourceFile);
-                                    } else {
-                                        FileUtils.moveFile(sourceFile, destFile);
-                                    }
-                                }
-                            }
-                        } else if (!mProfile.isDryRun()) {
-                            log = Dict.Dialog.ERROR_DEST_CANT_WRITE.toString();
-                        }
-                    }
+        boolean processed = false;
+        try {
+            if (mProfile.getApplyFile() != null) {
+                mInterrupted = !processPlan();
+            } else if (files == null && mProfile.isStreaming()) {
+                mInterrupted = !processStream();
+            } else {
+                if (files == null) {
+                    mInterrupted = !generateFileList();
+                } else {
+                    mFiles.addAll(files);
+                    mProfile.getFileOrder().sort(mFiles);
+                }
 
-                    mListener.onOperationLog(getMessage(log));
-                } catch (IOException | ImageProcessingException | NullPointerException ex) {
-                    mListener.onOperationLog(getMessage(ex.getLocalizedMessage()));
+                int fileCount = getFileCount();
+                if (!mInterrupted && fileCount > 0) {
+                    mListener.onOperationLog(String.format(mBundle.getString("found_count"), fileCount));
+                    mListener.onOperationLog("");
+                    mContext.setTotal(fileCount);
+                    status = Dict.PROCESSING.toString();
+                    mListener.onOperationLog(status);
+                    process(getFileIterator());
                 }
-                mListener.onOperationProgress(++progress, mFiles.size());
             }
+            processed = true;
+        } catch (UncheckedIOException ex) {
+            //A sorted run could not be read back
+            mListener.onOperationError(ex.getCause().toString());
+            mInterrupted = true;
+        } finally {
+            //Whatever was thrown, the state is closed as of an interrupted run
+            mInterrupted |= !processed;
+
+            //Only a full scan looks up every source file, which is what lets the date cache drop the entries it did not see
+            boolean fullScan = files == null && mProfile.getApplyFile() == null && !mProfile.isIncremental() && !mProfile.isResume();
+            if (mSession) {
+                flushDateCache();
+            } else {
+                closeDateCache(fullScan && !mInterrupted);
+                closeJournal();
+            }
+            closeFileSorters();
+            closePlan();
         }
 
         if (mInterrupted) {
@@ -174,14 +210,21 @@ public class Operation {
             mExceptions.stream().forEach((exception) -> {
                 mListener.onOperationLog(String.format("#%s", exception.getLocalizedMessage()));
             });
+            if (mRetryCount > 0) {
+                mListener.onOperationLog(String.format(mBundle.getString("last_run_kept"), mRetryCount));
+            }
             long millis = System.currentTimeMillis() - startTime;
+            mMetrics.setWallNanos(System.nanoTime() - startNanos);
+            mListener.onOperationMetrics(mMetrics);
             long min = TimeUnit.MILLISECONDS.toMinutes(millis);
             long sec = TimeUnit.MILLISECONDS.toSeconds(millis) - TimeUnit.MINUTES.toSeconds(TimeUnit.MILLISECONDS.toMinutes(millis));
             status = String.format("%s (%d %s, %d %s)", Dict.TASK_COMPLETED.toString(), min, Dict.TIME_MIN.toString(), sec, Dict.TIME_SEC.toString());
-            mListener.onOperationFinished(status, mFiles.size());
+            mListener.onOperationFinished(status, mContext.getTotal());
 
-            if (!mProfile.isDryRun()) {
-                mProfile.setLastRun(System.currentTimeMillis());
+            //Applying a plan or a batch of given files does not scan the source, leave that to the next incremental run
+            //Failed files are older than the start time, keep the last run so that they are retried
+            if (!mProfile.isDryRun() && files == null && mProfile.getApplyFile() == null && mRetryCount == 0) {
+                mProfile.setLastRun(startTime);
                 try {
                     ProfileManager.getInstance().save();
                 } catch (IOException ex) {
@@ -191,56 +234,165 @@ public class Operation {
         }
     }
 
-    private boolean generateFileList() {
-        mListener.onOperationLog("");
-        mListener.onOperationLog(Dict.GENERATING_FILELIST.toString());
-        PathMatcher pathMatcher = mProfile.getPathMatcher();
+    /**
+     * Reserves the destination of a task for this run. With replace
+     * existing, claims are kept for the whole run since the transfer does not
+     * check for an existing file, so of two sources with the same
+     * destination name the first one wins and the second is reported as a
+     * collision, as it is without replace existing.
+     */
+    private void claim(FileTask task) {
+        if (!mClaimedDestFiles.add(task.mDestFile)) {
+            task.mLog = String.format(Dict.Dialog.ERROR_DEST_FILE_EXISTS.toString(), task.mDestFile.getAbsolutePath());
+            task.mError = true;
+            task.mReady = false;
+        }
+    }
 
-        EnumSet<FileVisitOption> fileVisitOptions = EnumSet.noneOf(FileVisitOption.class);
-        if (mProfile.isFollowLinks()) {
-            fileVisitOptions = EnumSet.of(FileVisitOption.FOLLOW_LINKS);
+    private void closeDateCache(boolean complete) {
+        if (mDateCache != null) {
+            try {
+                mDateCache.close(complete);
+            } catch (IOException ex) {
+                mListener.onOperationLog(ex.getLocalizedMessage());
+            }
         }
+    }
 
-        File file = mProfile.getSourceDir();
-        if (file.isDirectory()) {
-            FileVisitor fileVisitor = new FileVisitor(pathMatcher, mFiles, this);
+    private void closeFileSorters() {
+        mFileSorters.forEach((fileSorter) -> {
+            fileSorter.close();
+        });
+        mFileSorters.clear();
+    }
+
+    private void closeJournal() {
+        if (mJournal != null) {
             try {
-                if (mProfile.isRecursive()) {
-                    Files.walkFileTree(file.toPath(), fileVisitOptions, Integer.MAX_VALUE, fileVisitor);
-                } else {
-                    Files.walkFileTree(file.toPath(), fileVisitOptions, 1, fileVisitor);
-                }
+                mJournal.close(!mInterrupted);
+            } catch (IOException ex) {
+                mListener.onOperationLog(ex.getLocalizedMessage());
+            }
+        }
+    }
 
-                if (fileVisitor.isInterrupted()) {
-                    return false;
+    private void closePlan() {
+        if (mPlan != null) {
+            try {
+                mPlan.close();
+                mListener.onOperationLog(String.format(mBundle.getString("plan_written"), mPlan.getCount(), mPlan.getFile().getAbsolutePath()));
+            } catch (IOException ex) {
+                mListener.onOperationLog(ex.getLocalizedMessage());
+            }
+        }
+    }
+
+    /**
+     * Reports the transfers still in flight and waits for the transfer
+     * threads, so that nothing is written to the date cache, the journal or
+     * the plan after they have been closed. Queued transfers return at once
+     * when cancelled.
+     *
+     * @return false if a transfer failed or the wait was interrupted
+     */
+    private boolean drain(IoScheduler<FileTask> transferScheduler, int pendingTransfers) {
+        boolean completed = true;
+        transferScheduler.shutdown();
+
+        try {
+            for (; pendingTransfers > 0; pendingTransfers--) {
+                try {
+                    report(transferScheduler.take().get());
+                } catch (ExecutionException ex) {
+                    mListener.onOperationLog(getMessage(ex.getCause().toString()));
+                    completed = false;
                 }
+            }
+
+            transferScheduler.awaitTermination();
+        } catch (InterruptedException ex) {
+            completed = false;
+        }
+
+        return completed;
+    }
+
+    private void flushDateCache() {
+        if (mDateCache != null) {
+            try {
+                mDateCache.flush();
             } catch (IOException ex) {
-                Xlog.e(getClass(), ex.getLocalizedMessage());
+                mListener.onOperationLog(ex.getLocalizedMessage());
             }
-        } else if (file.isFile() && pathMatcher.matches(file.toPath().getFileName())) {
-            mFiles.add(file);
+        }
+    }
+
+    private boolean generateFileList() {
+        mListener.onOperationLog("");
+        mListener.onOperationLog(Dict.GENERATING_FILELIST.toString());
+
+        //Other orders than by name need the whole list
+        long sortMemory = Preferences.getInstance().general().getSortMemory();
+        if (sortMemory > 0 && mProfile.getFileOrder() == FileOrder.NAME) {
+            return generateSortedFileList(sortMemory);
+        }
+
+        List<ScannedFileList> sourceFiles = new ArrayList<>();
+        for (int i = 0; i < mSourceDirs.size(); i++) {
+            sourceFiles.add(new ScannedFileList());
+        }
+
+        if (!walk(sourceIndex -> sourceFiles.get(sourceIndex)::add)) {
+            return false;
+        }
+
+        //Sources in profile order, so that the first source wins a collision on every run
+        for (ScannedFileList files : sourceFiles) {
+            mProfile.getFileOrder().sort(files);
+            mFiles.addAll(files);
+            files.clear();
         }
 
         if (mFiles.isEmpty()) {
             mListener.onOperationLog(Dict.FILELIST_EMPTY.toString());
-        } else {
-            Collections.sort(mFiles);
         }
 
         return true;
     }
 
-    private Date getDate(File sourceFile) throws IOException, ImageProcessingException {
-        Date date = new Date(System.currentTimeMillis());
-        DateSource dateSource = mProfile.getDateSource();
+    /**
+     * Collects the files of each source in a sorter that spills sorted runs
+     * to disk, the sources walk concurrently and share the budget.
+     */
+    private boolean generateSortedFileList(long sortMemory) {
+        for (int i = 0; i < mSourceDirs.size(); i++) {
+            mFileSorters.add(new ScannedFileSorter(sortMemory / mSourceDirs.size()));
+        }
 
-        if (dateSource == DateSource.FILE_CREATED) {
-            BasicFileAttributes attr = Files.readAttributes(sourceFile.toPath(), BasicFileAttributes.class);
-            date = new Date(attr.creationTime().toMillis());
-        } else if (dateSource == DateSource.FILE_MODIFIED) {
-            BasicFileAttributes attr = Files.readAttributes(sourceFile.toPath(), BasicFileAttributes.class);
-            date = new Date(attr.lastModifiedTime().toMillis());
-        } else if (dateSource == DateSource.EXIF_ORIGINAL) {
+        if (!walk(sourceIndex -> mFileSorters.get(sourceIndex)::add)) {
+            return false;
+        }
+
+        try {
+            for (ScannedFileSorter fileSorter : mFileSorters) {
+                fileSorter.sort();
+            }
+        } catch (IOException ex) {
+            mListener.onOperationLog(ex.getLocalizedMessage());
+            return false;
+        }
+
+        if (getFileCount() == 0) {
+            mListener.onOperationLog(Dict.FILELIST_EMPTY.toString());
+        }
+
+        return true;
+    }
+
+    private Date getExifDate(File sourceFile) throws IOException, ImageProcessingException {
+        Date date = ExifDateReader.read(sourceFile);
+
+        if (date == null) {
             Metadata metadata;
             Directory directory = null;
 
@@ -263,6 +415,90 @@ public class Operation {
         return date;
     }
 
+    private int getFileCount() {
+        int fileCount = mFiles.size();
+        for (ScannedFileSorter fileSorter : mFileSorters) {
+            fileCount += fileSorter.size();
+        }
+
+        return fileCount;
+    }
+
+    /**
+     * The sorted sources one after the other, or the file list.
+     */
+    private Iterator<File> getFileIterator() {
+        if (mFileSorters.isEmpty()) {
+            return mFiles.iterator();
+        }
+
+        Iterator<ScannedFileSorter> fileSorters = mFileSorters.iterator();
+
+        return new Iterator<File>() {
+            private Iterator<File> mIterator = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!mIterator.hasNext() && fileSorters.hasNext()) {
+                    mIterator = fileSorters.next().iterator();
+                }
+
+                return mIterator.hasNext();
+            }
+
+            @Override
+            public File next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                return mIterator.next();
+            }
+        };
+    }
+
+    /**
+     * Gets the file store of a directory, or of its nearest existing
+     * ancestor for a directory that is not created yet.
+     */
+    private FileStore getFileStore(File dir) throws IOException {
+        FileStore fileStore = mFileStores.get(dir);
+        if (fileStore == null) {
+            File existingDir = dir;
+            while (!existingDir.exists() && existingDir.getParentFile() != null) {
+                existingDir = existingDir.getParentFile();
+            }
+
+            fileStore = Files.getFileStore(existingDir.toPath());
+            mFileStores.put(dir, fileStore);
+        }
+
+        return fileStore;
+    }
+
+    /**
+     * Parses the first group, or the whole match, of the file name pattern.
+     * Patterns without a time give the start of the day.
+     */
+    private Date getFilenameDate(File sourceFile) {
+        String name = sourceFile.getName();
+        Matcher matcher = mProfile.getFilenamePattern().matcher(name);
+        if (!matcher.find()) {
+            throw new DateTimeParseException(String.format(mBundle.getString("filename_no_date"), sourceFile.getAbsolutePath()), name, 0);
+        }
+
+        String text = matcher.groupCount() > 0 ? matcher.group(1) : matcher.group();
+        TemporalAccessor temporal;
+        try {
+            temporal = mProfile.getFilenameDateFormatter().parseBest(text, LocalDateTime::from, LocalDate::from);
+        } catch (DateTimeParseException ex) {
+            throw new DateTimeParseException(String.format(mBundle.getString("filename_no_date"), sourceFile.getAbsolutePath()), text, ex.getErrorIndex(), ex);
+        }
+        LocalDateTime dateTime = temporal instanceof LocalDate ? ((LocalDate) temporal).atStartOfDay() : (LocalDateTime) temporal;
+
+        return Date.from(dateTime.atZone(ZoneId.systemDefault()).toInstant());
+    }
+
     private String getMessage(String message) {
         if (mProfile.isDryRun()) {
             message = String.format("dry-run: %s", message);
@@ -271,10 +507,716 @@ public class Operation {
         return StringUtils.defaultString(message, "");
     }
 
+    /**
+     * @return the file store of the task's source, or null if it can not
+     * be found
+     */
+    private FileStore getSourceFileStore(FileTask task) {
+        try {
+            return getFileStore(task.mSourceFile.getAbsoluteFile().getParentFile());
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the index of the source that the file was found in, or -1
+     */
+    private int getSourceIndex(File file) {
+        if (mSourcePaths.length == 1) {
+            return 0;
+        }
+
+        String path = file.getAbsolutePath();
+        int sourceIndex = -1;
+
+        //The longest match, in case one source is inside another
+        for (int i = 0; i < mSourcePaths.length; i++) {
+            if (path.startsWith(mSourcePaths[i]) && (sourceIndex < 0 || mSourcePaths[i].length() > mSourcePaths[sourceIndex].length())) {
+                sourceIndex = i;
+            }
+        }
+
+        return sourceIndex;
+    }
+
+    private File getStateFile(String dirName, String extension) throws IOException {
+        String name = mProfile.getName();
+        if (name == null) {
+            name = "source-" + Integer.toHexString(mProfile.getSourceDir().getAbsolutePath().hashCode());
+        }
+
+        File dir = new File(ProfileManager.getInstance().getDirectory(), dirName);
+        FileUtils.forceMkdir(dir);
+
+        return new File(dir, name.replaceAll("[^\\w.-]", "_") + extension);
+    }
+
+    /**
+     * Rename sourceFile to destFile if both are on the same file store.
+     *
+     * @return false if the file has to be copied instead
+     */
+    private boolean move(File sourceFile, File destFile) throws IOException {
+        if (!getFileStore(sourceFile.getAbsoluteFile().getParentFile()).equals(getFileStore(destFile.getAbsoluteFile().getParentFile()))) {
+            return false;
+        }
+
+        try {
+            Files.move(sourceFile.toPath(), destFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (AtomicMoveNotSupportedException ex) {
+            return false;
+        }
+    }
+
+    private void openDateCache() {
+        //Applying a plan reads no dates
+        if (mProfile.isDateCache() && mProfile.getDateSource() == DateSource.EXIF_ORIGINAL && mProfile.getApplyFile() == null) {
+            try {
+                mDateCache = DateCache.open(getStateFile("cache", ".cache"));
+            } catch (IOException ex) {
+                mListener.onOperationLog(ex.getLocalizedMessage());
+            }
+        }
+    }
+
+    private void openJournal() {
+        if (!mProfile.isJournal() || mProfile.isDryRun()) {
+            return;
+        }
+
+        try {
+            mJournal = Journal.open(getStateFile("journal", ".journal"), mProfile.isResume());
+
+            //Transfers that were started but not recorded as done, with or without resume
+            for (Journal.Entry entry : mJournal.getPendingEntries()) {
+                File sourceFile = entry.getSourceFile();
+                File destFile = entry.getDestFile();
+
+                if (destFile.exists() && sourceFile.exists()) {
+                    //A partial destination, the source is transferred again
+                    Files.delete(destFile.toPath());
+                    mListener.onOperationLog(String.format(mBundle.getString("journal_redo"), sourceFile.getAbsolutePath()));
+                }
+                mJournal.done(entry.getSequence());
+            }
+        } catch (IOException ex) {
+            mListener.onOperationLog(ex.getLocalizedMessage());
+        }
+    }
+
+    private void openPlan() {
+        if (mProfile.getPlanFile() != null) {
+            try {
+                mPlan = Plan.create(mProfile.getPlanFile());
+            } catch (IOException ex) {
+                mListener.onOperationLog(ex.getLocalizedMessage());
+            }
+        }
+    }
+
+    /**
+     * Checks that a planned source is unchanged and creates its destination
+     * directory before the transfer.
+     */
+    private FileTask prepare(FileTask task) {
+        File sourceFile = task.mSourceFile;
+        if (mContext.isCancelled()) {
+            return task;
+        }
+
+        if (mJournal != null && mJournal.isCompleted(sourceFile)) {
+            task.mLog = String.format(mBundle.getString("journal_skip"), sourceFile.getAbsolutePath());
+            return task;
+        }
+
+        if (!task.mPlanEntry.isUnchanged()) {
+            task.mLog = String.format(mBundle.getString("plan_source_changed"), sourceFile.getAbsolutePath());
+            task.mError = true;
+            return task;
+        }
+
+        File destDir = task.mDestFile.getParentFile();
+        try {
+            if (!destDir.isDirectory() && !mProfile.isDryRun()) {
+                long mkdirNanos = System.nanoTime();
+                FileUtils.forceMkdir(destDir);
+                mMetrics.addMkdir(System.nanoTime() - mkdirNanos);
+            }
+        } catch (IOException ex) {
+            task.mLog = ex.getLocalizedMessage();
+            task.mError = true;
+            task.mRetry = true;
+            return task;
+        }
+
+        return transfer(task);
+    }
+
+    private void process(Iterator<File> iterator) {
+        int jobs = mProfile.getJobs();
+        if (jobs > 1) {
+            processParallel(iterator, jobs);
+        } else {
+            processSequential(iterator);
+        }
+    }
+
+    private void processParallel(Iterator<File> iterator, int jobs) {
+        ExecutorService executorService = Executors.newFixedThreadPool(jobs, runnable -> {
+            Thread thread = new Thread(runnable, "FileByDate worker");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+        IoScheduler<FileTask> transferScheduler = new IoScheduler<>(jobs, Preferences.getInstance().fbd());
+        ArrayDeque<Future<FileTask>> resolveQueue = new ArrayDeque<>();
+        int window = jobs * 4;
+        int pendingTransfers = 0;
+
+        try {
+            while (iterator.hasNext() || !resolveQueue.isEmpty()) {
+                if (mContext.isCancelled()) {
+                    break;
+                }
+
+                while (iterator.hasNext() && resolveQueue.size() < window) {
+                    FileTask task = new FileTask(iterator.next());
+                    resolveQueue.add(executorService.submit(transferScheduler.limit(getSourceFileStore(task), () -> resolve(task))));
+                }
+
+                //Claim destinations in list order so that collisions are resolved the same way on every run
+                FileTask task = resolveQueue.poll().get();
+                if (task.mAbort) {
+                    mListener.onOperationError(task.mLog);
+                    mInterrupted = true;
+                    break;
+                }
+
+                if (task.mReady) {
+                    claim(task);
+                }
+
+                if (task.mReady) {
+                    submit(transferScheduler, task, () -> transfer(task));
+                    pendingTransfers++;
+                } else {
+                    report(task);
+                }
+
+                //Count a result as taken before get, which may throw
+                while (pendingTransfers >= window) {
+                    pendingTransfers--;
+                    report(transferScheduler.take().get());
+                }
+
+                Future<FileTask> future;
+                while ((future = transferScheduler.poll()) != null) {
+                    pendingTransfers--;
+                    report(future.get());
+                }
+            }
+        } catch (InterruptedException ex) {
+            mInterrupted = true;
+        } catch (ExecutionException ex) {
+            mListener.onOperationLog(getMessage(ex.getCause().toString()));
+            mInterrupted = true;
+        } catch (UncheckedIOException ex) {
+            //A sorted run could not be read back, the transfers in flight are still waited for
+            mListener.onOperationError(ex.getCause().toString());
+            mInterrupted = true;
+        }
+
+        //Nothing more is claimed, resolves that have not started are dropped
+        for (Future<FileTask> future : resolveQueue) {
+            future.cancel(false);
+        }
+        executorService.shutdown();
+
+        if (!drain(transferScheduler, pendingTransfers)) {
+            mInterrupted = true;
+        }
+
+        try {
+            executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } catch (InterruptedException ex) {
+            mInterrupted = true;
+        }
+
+        mInterrupted |= mContext.isCancelled();
+    }
+
+    /**
+     * Runs the operations of a plan with the profile's number of jobs,
+     * without scanning the source or reading any dates. The plan is read as
+     * it is carried out, with a bounded number of operations in flight.
+     */
+    private boolean processPlan() {
+        mListener.onOperationLog("");
+        mListener.onOperationLog(Dict.PROCESSING.toString());
+
+        int jobs = mProfile.getJobs();
+        IoScheduler<FileTask> transferScheduler = new IoScheduler<>(jobs, Preferences.getInstance().fbd());
+        int window = jobs * 4;
+        int pendingTransfers = 0;
+        boolean completed = true;
+
+        try (Plan.Reader reader = Plan.open(mProfile.getApplyFile())) {
+            for (Plan.Entry entry; (entry = reader.next()) != null;) {
+                if (mContext.isCancelled()) {
+                    break;
+                }
+
+                mContext.incrementTotal();
+                FileTask task = new FileTask(entry);
+                submit(transferScheduler, task, () -> prepare(task));
+                pendingTransfers++;
+
+                //Count a result as taken before get, which may throw
+                while (pendingTransfers >= window) {
+                    pendingTransfers--;
+                    report(transferScheduler.take().get());
+                }
+
+                Future<FileTask> future;
+                while ((future = transferScheduler.poll()) != null) {
+                    pendingTransfers--;
+                    report(future.get());
+                }
+            }
+        } catch (IOException ex) {
+            mListener.onOperationError(ex.getLocalizedMessage());
+            completed = false;
+        } catch (InterruptedException ex) {
+            completed = false;
+        } catch (ExecutionException ex) {
+            mListener.onOperationLog(getMessage(ex.getCause().toString()));
+            completed = false;
+        }
+
+        if (!drain(transferScheduler, pendingTransfers)) {
+            completed = false;
+        }
+
+        if (mContext.getTotal() == 0) {
+            mListener.onOperationLog(Dict.FILELIST_EMPTY.toString());
+        } else {
+            mListener.onOperationLog(String.format(mBundle.getString("found_count"), mContext.getTotal()));
+        }
+
+        return completed && !mContext.isCancelled();
+    }
+
+    private void processSequential(Iterator<File> iterator) {
+        while (iterator.hasNext()) {
+            File sourceFile = iterator.next();
+            if (mContext.isCancelled()) {
+                mInterrupted = true;
+                break;
+            }
+
+            FileTask task = resolve(new FileTask(sourceFile));
+            if (task.mAbort) {
+                mListener.onOperationError(task.mLog);
+                mInterrupted = true;
+                break;
+            }
+
+            if (task.mReady) {
+                claim(task);
+            }
+
+            if (task.mReady) {
+                transfer(task);
+            }
+
+            report(task);
+        }
+    }
+
+    private boolean processStream() {
+        mListener.onOperationLog("");
+        mListener.onOperationLog(Dict.PROCESSING.toString());
+
+        FileQueue fileQueue = new FileQueue(mContext, STREAM_QUEUE_CAPACITY);
+        AtomicBoolean walkCompleted = new AtomicBoolean();
+        Thread walkerThread = new Thread(() -> {
+            try {
+                walkCompleted.set(walk(sourceIndex -> file -> {
+                    mContext.incrementTotal();
+                    fileQueue.put(file);
+                }));
+            } finally {
+                fileQueue.close();
+            }
+        }, "FileByDate walker");
+        walkerThread.setDaemon(true);
+        walkerThread.start();
+
+        process(fileQueue);
+
+        //The walker would block on a full queue forever if processing stopped early
+        fileQueue.abandon();
+        if (mInterrupted) {
+            mContext.cancel();
+        }
+
+        try {
+            walkerThread.join();
+        } catch (InterruptedException ex) {
+            return false;
+        }
+
+        if (mContext.getTotal() == 0) {
+            mListener.onOperationLog(Dict.FILELIST_EMPTY.toString());
+        } else {
+            mListener.onOperationLog(String.format(mBundle.getString("found_count"), mContext.getTotal()));
+        }
+
+        return walkCompleted.get() && !mInterrupted;
+    }
+
+    private void report(FileTask task) {
+        //The written file takes over from the claim, so that the claims do not grow with the run
+        //Dry runs and plans write nothing a later file could collide with, so they keep every claim
+        if (task.mTransferred && !mProfile.isReplaceExisting()) {
+            mClaimedDestFiles.remove(task.mDestFile);
+        }
+
+        if (task.mRetry) {
+            mRetryCount++;
+        }
+
+        mMetrics.addFile(task.mNanos);
+        if (task.mError) {
+            mListener.onOperationError(getMessage(task.getLog()));
+        } else if (mLogEnabled) {
+            mListener.onOperationLog(getMessage(task.getLog()));
+        }
+        mListener.onOperationProgress(mContext.incrementProgress(), mContext.getTotal());
+    }
+
+    private FileTask resolve(FileTask task) {
+        File sourceFile = task.mSourceFile;
+        if (mContext.isCancelled()) {
+            return task;
+        }
+
+        long startNanos = System.nanoTime();
+        if (mJournal != null && mJournal.isCompleted(sourceFile)) {
+            task.mLog = String.format(mBundle.getString("journal_skip"), sourceFile.getAbsolutePath());
+            return task;
+        }
+
+        try {
+            Date date = getDate(sourceFile);
+            long dateNanos = System.nanoTime();
+            mMetrics.addDate(dateNanos - startNanos);
+
+            File destDir;
+            try {
+                destDir = mDestinationResolver.resolve(date);
+            } catch (FileAlreadyExistsException ex) {
+                task.mLog = String.format(Dict.Dialog.ERROR_DEST_DIR_IS_FILE.toString(), ex.getFile());
+                task.mAbort = true;
+                return task;
+            }
+
+            String destFilename = sourceFile.getName();
+            String base = FilenameUtils.getBaseName(destFilename);
+            String ext = FilenameUtils.getExtension(destFilename);
+            NameCase caseBase = mProfile.getCaseBase();
+            NameCase caseExt = mProfile.getCaseExt();
+
+            if (caseBase != NameCase.UNCHANGED || caseExt != NameCase.UNCHANGED) {
+                if (caseBase == NameCase.LOWER) {
+                    base = base.toLowerCase();
+                } else if (caseBase == NameCase.UPPER) {
+                    base = base.toUpperCase();
+                }
+
+                if (caseExt == NameCase.LOWER) {
+                    ext = ext.toLowerCase();
+                } else if (caseBase == NameCase.UPPER) {
+                    ext = ext.toUpperCase();
+                }
+
+                if (base.length() == 0) {
+                    destFilename = String.format(".%s", ext);
+                } else if (ext.length() == 0) {
+                    destFilename = base;
+                } else {
+                    destFilename = String.format("%s.%s", base, ext);
+                }
+            }
+
+            task.mDestFile = new File(destDir, destFilename);
+            task.mReady = true;
+        } catch (IOException ex) {
+            task.mLog = ex.getLocalizedMessage();
+            task.mError = true;
+            task.mRetry = true;
+        } catch (ImageProcessingException | NullPointerException | DateTimeException ex) {
+            //No date in the file, a later run would fail the same way
+            task.mLog = ex.getLocalizedMessage();
+            task.mError = true;
+        }
+
+        task.mNanos += System.nanoTime() - startNanos;
+
+        return task;
+    }
+
+    /**
+     * Queues work on a task with the devices of its source and destination.
+     */
+    private void submit(IoScheduler<FileTask> scheduler, FileTask task, Callable<FileTask> callable) {
+        FileStore sourceFileStore = null;
+        FileStore destFileStore = null;
+
+        try {
+            sourceFileStore = getFileStore(task.mSourceFile.getAbsoluteFile().getParentFile());
+            destFileStore = getFileStore(task.mDestFile.getAbsoluteFile().getParentFile());
+        } catch (IOException ex) {
+            //Run it without device limits
+        }
+
+        scheduler.submit(sourceFileStore, destFileStore, callable);
+    }
+
+    private FileTask transfer(FileTask task) {
+        File sourceFile = task.mSourceFile;
+        File destFile = task.mDestFile;
+        File destDir = destFile.getParentFile();
+        if (mContext.isCancelled()) {
+            return task;
+        }
+
+        long startNanos = System.nanoTime();
+        try {
+            if (destFile.exists() && !mProfile.isReplaceExisting()) {
+                task.mLog = String.format(Dict.Dialog.ERROR_DEST_FILE_EXISTS.toString(), destFile.getAbsolutePath());
+                task.mError = true;
+            } else {
+                Command command = task.mPlanEntry == null ? mProfile.getCommand() : task.mPlanEntry.getCommand();
+                task.mCommand = command == Command.COPY ? "cp" : "mv";
+
+                if (mPlan != null) {
+                    mPlan.add(command, sourceFile, destFile);
+                } else if (destDir.canWrite()) {
+                    if (!mProfile.isDryRun()) {
+                        TransferEngine transferEngine = mProfile.getTransferEngine();
+                        long size = ScannedFile.of(sourceFile).getSize();
+                        int sequence = -1;
+
+                        if (mJournal != null) {
+                            sequence = mJournal.intent(sourceFile, destFile);
+                        }
+
+                        long bytes = 0;
+
+                        //A rename leaves nothing partial behind, only a copy waits for its intent to be on disk
+                        if (command == Command.COPY || !move(sourceFile, destFile)) {
+                            if (mJournal != null) {
+                                mJournal.sync(sequence);
+                            }
+
+                            transferEngine.transfer(sourceFile, destFile);
+                            if (command == Command.MOVE) {
+                                verify(sourceFile, destFile, size);
+                                Files.delete(sourceFile.toPath());
+                            }
+                            bytes = size;
+                        }
+
+                        if (mJournal != null) {
+                            mJournal.done(sequence);
+                        }
+
+                        task.mTransferred = true;
+
+                        mMetrics.addTransfer(System.nanoTime() - startNanos, bytes);
+                        int sourceIndex = getSourceIndex(sourceFile);
+                        if (sourceIndex >= 0) {
+                            mMetrics.getSourceMetrics().get(sourceIndex).addTransfer(bytes);
+                        }
+                    }
+                } else if (!mProfile.isDryRun()) {
+                    task.mLog = Dict.Dialog.ERROR_DEST_CANT_WRITE.toString();
+                    task.mError = true;
+                    task.mRetry = true;
+                }
+            }
+        } catch (IOException | NullPointerException ex) {
+            task.mLog = StringUtils.defaultString(ex.getLocalizedMessage());
+            task.mError = true;
+            task.mRetry = true;
+        }
+
+        task.mNanos += System.nanoTime() - startNanos;
+
+        return task;
+    }
+
+    /**
+     * Reads back the size and last modified date of a copy before its source
+     * is deleted. The dates may differ by the two seconds of a FAT file
+     * system. A copy that does not match is deleted and the source kept.
+     */
+    private void verify(File sourceFile, File destFile, long size) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(destFile.toPath(), BasicFileAttributes.class);
+        long lastModified = sourceFile.lastModified();
+
+        if (attributes.size() != size || Math.abs(attributes.lastModifiedTime().toMillis() - lastModified) > 2000) {
+            Files.deleteIfExists(destFile.toPath());
+            throw new IOException(String.format(mBundle.getString("move_verify_failed"), sourceFile.getAbsolutePath()));
+        }
+    }
+
+    /**
+     * Walks the sources, each on a thread of its own when there are more
+     * than one.
+     *
+     * @param sinks the sink for the files of a source, by source index
+     */
+    private boolean walk(IntFunction<Consumer<File>> sinks) {
+        long startNanos = System.nanoTime();
+        boolean completed = true;
+
+        if (mSourceDirs.size() == 1) {
+            completed = walk(0, sinks.apply(0));
+        } else {
+            ExecutorService executorService = Executors.newFixedThreadPool(mSourceDirs.size(), runnable -> {
+                Thread thread = new Thread(runnable, "FileByDate walker");
+                thread.setDaemon(true);
+
+                return thread;
+            });
+            List<Future<Boolean>> futures = new ArrayList<>();
+
+            for (int i = 0; i < mSourceDirs.size(); i++) {
+                int sourceIndex = i;
+                futures.add(executorService.submit(() -> walk(sourceIndex, sinks.apply(sourceIndex))));
+            }
+
+            try {
+                for (Future<Boolean> future : futures) {
+                    completed &= future.get();
+                }
+            } catch (InterruptedException ex) {
+                completed = false;
+            } catch (ExecutionException ex) {
+                mListener.onOperationLog(getMessage(ex.getCause().toString()));
+            } finally {
+                executorService.shutdown();
+            }
+        }
+
+        mMetrics.setScanNanos(System.nanoTime() - startNanos);
+
+        return completed;
+    }
+
+    private boolean walk(int sourceIndex, Consumer<File> sink) {
+        long startNanos = System.nanoTime();
+        PathMatcher pathMatcher = mProfile.getPathMatcher();
+        OperationMetrics.SourceMetrics sourceMetrics = mMetrics.getSourceMetrics().get(sourceIndex);
+        Consumer<File> countingSink = file -> {
+            sourceMetrics.addFound();
+            sink.accept(file);
+        };
+        boolean completed = true;
+
+        File file = mSourceDirs.get(sourceIndex);
+        if (file.isDirectory()) {
+            FileVisitor fileVisitor = new FileVisitor(pathMatcher, countingSink, this);
+            DirectoryScanner directoryScanner = new DirectoryScanner(Preferences.getInstance().general().getScanParallelism(), mProfile.isFollowLinks(), mProfile.isRecursive());
+            try {
+                directoryScanner.scan(file.toPath(), fileVisitor);
+                completed = !fileVisitor.isInterrupted();
+            } catch (IOException ex) {
+                Xlog.e(getClass(), ex.getLocalizedMessage());
+            }
+        } else if (file.isFile() && pathMatcher.matches(file.toPath().getFileName())) {
+            countingSink.accept(file);
+        }
+
+        sourceMetrics.setScanNanos(System.nanoTime() - startNanos);
+
+        return completed;
+    }
+
+    /**
+     * Closes what {@link #open()} opened.
+     */
+    void close() {
+        mSession = false;
+        closeDateCache(false);
+        closeJournal();
+    }
+
+    OperationContext getContext() {
+        return mContext;
+    }
+
+    Date getDate(File sourceFile) throws IOException, ImageProcessingException {
+        Date date = new Date(System.currentTimeMillis());
+        DateSource dateSource = mProfile.getDateSource();
+
+        if (dateSource == DateSource.FILE_CREATED) {
+            date = new Date(ScannedFile.of(sourceFile).getCreated());
+        } else if (dateSource == DateSource.FILE_MODIFIED) {
+            date = new Date(ScannedFile.of(sourceFile).getLastModified());
+        } else if (dateSource == DateSource.FILENAME_PATTERN) {
+            date = getFilenameDate(sourceFile);
+        } else if (dateSource == DateSource.EXIF_ORIGINAL) {
+            if (mDateCache == null) {
+                date = getExifDate(sourceFile);
+            } else {
+                ScannedFile scannedFile = ScannedFile.of(sourceFile);
+                Long cachedDate = mDateCache.get(sourceFile, scannedFile.getSize(), scannedFile.getLastModified(), dateSource);
+
+                if (cachedDate == null) {
+                    try {
+                        date = getExifDate(sourceFile);
+                    } catch (ImageProcessingException ex) {
+                        //Remember files without a date too, they are not read again until they change
+                        mDateCache.put(sourceFile, scannedFile.getSize(), scannedFile.getLastModified(), dateSource, DateCache.NO_DATE);
+                        throw ex;
+                    }
+                    mDateCache.put(sourceFile, scannedFile.getSize(), scannedFile.getLastModified(), dateSource, date == null ? DateCache.NO_DATE : date.getTime());
+                } else if (cachedDate == DateCache.NO_DATE) {
+                    throw new ImageProcessingException(String.format(Dict.Dialog.ERROR_EXIF_NOT_FOUND.toString(), sourceFile.getAbsolutePath()));
+                } else {
+                    date = new Date(cachedDate);
+                }
+            }
+        }
+
+        return date;
+    }
+
     OperationListener getListener() {
         return mListener;
     }
 
+    Profile getProfile() {
+        return mProfile;
+    }
+
+    /**
+     * Keeps the date cache and the journal open over the following calls to
+     * {@link #start(List)}, until {@link #close()}. The metrics reported by
+     * each call then cover the whole session.
+     */
+    void open() {
+        openDateCache();
+        openJournal();
+        mSession = true;
+        mSessionNanos = System.nanoTime();
+    }
+
     public enum Command {
 
         COPY, MOVE;
@@ -284,4 +1226,41 @@ public class Operation {
             return Dict.valueOf(name()).toString();
         }
     }
+
+    private static class FileTask {
+
+        private boolean mAbort;
+        private String mCommand;
+        private File mDestFile;
+        private boolean mError;
+        private String mLog;
+        private long mNanos;
+        private Plan.Entry mPlanEntry;
+        private boolean mReady;
+        private boolean mRetry;
+        private final File mSourceFile;
+        private boolean mTransferred;
+
+        FileTask(File sourceFile) {
+            mSourceFile = sourceFile;
+        }
+
+        FileTask(Plan.Entry planEntry) {
+            mPlanEntry = planEntry;
+            mSourceFile = planEntry.getSourceFile();
+            mDestFile = planEntry.getDestFile();
+            mReady = true;
+        }
+
+        /**
+         * Formats the transfer line only when it is needed.
+         */
+        String getLog() {
+            if (mLog == null && mCommand != null) {
+                return String.format("%s %s  %s", mCommand, mSourceFile.getAbsolutePath(), mDestFile.toString());
+            }
+
+            return mLog;
+        }
+    }
 }
@@ -21,6 +21,12 @@ package se.trixon.ttc.tools.fbd;
  */
 public interface OperationListener {
 
+    /**
+     * @return false if onOperationLog messages are discarded, which lets
+     * the operation skip formatting them
+     */
+    boolean isLogEnabled();
+
     void onOperationError(String message);
 
     void onOperationFailed(String message);
@@ -31,6 +37,8 @@ public interface OperationListener {
 
     void onOperationLog(String message);
 
+    void onOperationMetrics(OperationMetrics metrics);
+
     void onOperationProcessingStarted();
 
     void onOperationProgress(int value, int max);
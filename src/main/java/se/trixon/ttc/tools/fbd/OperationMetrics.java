@@ -0,0 +1,258 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.ttc.tools.fbd;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.ResourceBundle;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.commons.io.FileUtils;
+import se.trixon.almond.util.SystemHelper;
+
+/**
+ * Time spent per phase of an operation, bytes transferred and the
+ * distribution of the per file latency.
+ *
+ * Workers only add to counters, nothing is formatted until the operation
+ * has finished. The phase times are summed over all jobs and may exceed
+ * the wall time of a parallel run. Latencies are kept in power of two
+ * buckets, which puts the percentiles within a factor of two. A profile
+ * with more than one source also gets the files and bytes per source.
+ *
+ * @author Patrik Karlström
+ */
+public class OperationMetrics {
+
+    private static final int BUCKETS = 64;
+
+    private final ResourceBundle mBundle = SystemHelper.getBundle(OperationMetrics.class, "Bundle");
+    private final LongAdder mBytes = new LongAdder();
+    private final LongAdder mDateNanos = new LongAdder();
+    private final LongAdder mFiles = new LongAdder();
+    private final AtomicLongArray mLatencyBuckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder mMkdirNanos = new LongAdder();
+    private volatile long mScanNanos;
+    private volatile List<SourceMetrics> mSourceMetrics = Collections.emptyList();
+    private final LongAdder mTransferNanos = new LongAdder();
+    private volatile long mWallNanos;
+
+    public OperationMetrics() {
+    }
+
+    public long getBytes() {
+        return mBytes.sum();
+    }
+
+    public long getDateNanos() {
+        return mDateNanos.sum();
+    }
+
+    public long getFiles() {
+        return mFiles.sum();
+    }
+
+    public double getFilesPerSecond() {
+        return mWallNanos == 0 ? 0 : getFiles() / (mWallNanos / 1E9);
+    }
+
+    /**
+     * @param percentile 0 - 100
+     * @return the latency in nanoseconds that the given percentage of the
+     * files were processed within
+     */
+    public long getLatencyNanos(double percentile) {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += mLatencyBuckets.get(i);
+        }
+
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(count * percentile / 100.0);
+        long cumulative = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            long bucketCount = mLatencyBuckets.get(i);
+            if (cumulative + bucketCount >= rank) {
+                long lower = i == 0 ? 0 : 1L << i;
+                long width = i == 0 ? 1 : lower;
+                double fraction = (rank - cumulative) / (double) bucketCount;
+
+                return lower + (long) (width * fraction);
+            }
+            cumulative += bucketCount;
+        }
+
+        return Long.MAX_VALUE;
+    }
+
+    public double getMegabytesPerSecond() {
+        return mWallNanos == 0 ? 0 : getBytes() / (1024.0 * 1024.0) / (mWallNanos / 1E9);
+    }
+
+    public long getMkdirNanos() {
+        return mMkdirNanos.sum();
+    }
+
+    public long getScanNanos() {
+        return mScanNanos;
+    }
+
+    public List<SourceMetrics> getSourceMetrics() {
+        return mSourceMetrics;
+    }
+
+    public long getTransferNanos() {
+        return mTransferNanos.sum();
+    }
+
+    public long getWallNanos() {
+        return mWallNanos;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(String.format(mBundle.getString("metrics"),
+                getFiles(),
+                getFilesPerSecond(),
+                FileUtils.byteCountToDisplaySize(getBytes()),
+                getMegabytesPerSecond(),
+                toMillis(mWallNanos),
+                toMillis(mScanNanos),
+                toMillis(getDateNanos()),
+                toMillis(getMkdirNanos()),
+                toMillis(getTransferNanos()),
+                getLatencyNanos(50) / 1E6,
+                getLatencyNanos(99) / 1E6
+        ));
+
+        if (mSourceMetrics.size() > 1) {
+            for (SourceMetrics sourceMetrics : mSourceMetrics) {
+                builder.append("\n").append(String.format(mBundle.getString("metrics_source"),
+                        sourceMetrics.getSourceDir(),
+                        sourceMetrics.getFoundFiles(),
+                        toMillis(sourceMetrics.getScanNanos()),
+                        sourceMetrics.getFiles(),
+                        FileUtils.byteCountToDisplaySize(sourceMetrics.getBytes()),
+                        sourceMetrics.getMegabytesPerSecond()
+                ));
+            }
+        }
+
+        return builder.toString();
+    }
+
+    private long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    void addDate(long nanos) {
+        mDateNanos.add(nanos);
+    }
+
+    void addFile(long latencyNanos) {
+        mFiles.increment();
+        mLatencyBuckets.incrementAndGet(latencyNanos <= 1 ? 0 : 63 - Long.numberOfLeadingZeros(latencyNanos));
+    }
+
+    void addMkdir(long nanos) {
+        mMkdirNanos.add(nanos);
+    }
+
+    void addTransfer(long nanos, long bytes) {
+        mTransferNanos.add(nanos);
+        mBytes.add(bytes);
+    }
+
+    void setScanNanos(long scanNanos) {
+        mScanNanos = scanNanos;
+    }
+
+    void setSourceDirs(List<File> sourceDirs) {
+        List<SourceMetrics> sourceMetrics = new ArrayList<>();
+        for (File sourceDir : sourceDirs) {
+            sourceMetrics.add(new SourceMetrics(sourceDir));
+        }
+
+        mSourceMetrics = Collections.unmodifiableList(sourceMetrics);
+    }
+
+    void setWallNanos(long wallNanos) {
+        mWallNanos = wallNanos;
+    }
+
+    public class SourceMetrics {
+
+        private final LongAdder mBytes = new LongAdder();
+        private final LongAdder mFiles = new LongAdder();
+        private final LongAdder mFoundFiles = new LongAdder();
+        private volatile long mScanNanos;
+        private final File mSourceDir;
+
+        SourceMetrics(File sourceDir) {
+            mSourceDir = sourceDir;
+        }
+
+        public long getBytes() {
+            return mBytes.sum();
+        }
+
+        /**
+         * @return the number of files transferred from the source
+         */
+        public long getFiles() {
+            return mFiles.sum();
+        }
+
+        public long getFoundFiles() {
+            return mFoundFiles.sum();
+        }
+
+        /**
+         * @return the bytes transferred from the source over the wall time
+         * of the whole operation
+         */
+        public double getMegabytesPerSecond() {
+            return mWallNanos == 0 ? 0 : getBytes() / (1024.0 * 1024.0) / (mWallNanos / 1E9);
+        }
+
+        public long getScanNanos() {
+            return mScanNanos;
+        }
+
+        public File getSourceDir() {
+            return mSourceDir;
+        }
+
+        void addFound() {
+            mFoundFiles.increment();
+        }
+
+        void addTransfer(long bytes) {
+            mFiles.increment();
+            mBytes.add(bytes);
+        }
+
+        void setScanNanos(long scanNanos) {
+            mScanNanos = scanNanos;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.ttc.tools.fbd;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ResourceBundle;
+import se.trixon.almond.util.SystemHelper;
+import se.trixon.ttc.tools.fbd.Operation.Command;
+
+/**
+ * Resolved operations written by a planning run and read back by an apply
+ * run.
+ *
+ * A plan is a UTF-8 text file with a header line followed by one line per
+ * operation, holding tab separated command (cp or mv), source size, source
+ * modification time, source and destination. Tabs, line breaks and
+ * backslashes in paths are escaped with a backslash.
+ *
+ * @author Patrik Karlström
+ */
+class Plan {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String HEADER = "#filebydate-plan\t1";
+
+    private int mCount;
+    private final File mFile;
+    private final Writer mWriter;
+
+    /**
+     * Creates a new plan, replacing any existing file.
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    static Plan create(File file) throws IOException {
+        return new Plan(file);
+    }
+
+    /**
+     * Opens a plan for reading its operations one at a time.
+     *
+     * @param file
+     * @return
+     * @throws IOException if the file can not be read or is not a plan
+     */
+    static Reader open(File file) throws IOException {
+        return new Reader(file);
+    }
+
+    private static String escape(String string) {
+        StringBuilder builder = new StringBuilder(string.length() + 8);
+
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            switch (c) {
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                default:
+                    builder.append(c);
+            }
+        }
+
+        return builder.toString();
+    }
+
+    private static Command getCommand(String name) {
+        if ("cp".equals(name)) {
+            return Command.COPY;
+        } else if ("mv".equals(name)) {
+            return Command.MOVE;
+        }
+
+        throw new IllegalArgumentException(name);
+    }
+
+    private static String unescape(String string) {
+        if (string.indexOf('\\') < 0) {
+            return string;
+        }
+
+        StringBuilder builder = new StringBuilder(string.length());
+
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c == '\\' && ++i < string.length()) {
+                c = string.charAt(i);
+                switch (c) {
+                    case 't':
+                        c = '\t';
+                        break;
+                    case 'n':
+                        c = '\n';
+                        break;
+                    case 'r':
+                        c = '\r';
+                        break;
+                    default:
+                        break;
+                }
+            }
+            builder.append(c);
+        }
+
+        return builder.toString();
+    }
+
+    private Plan(File file) throws IOException {
+        mFile = file;
+        mWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE);
+        mWriter.write(HEADER);
+        mWriter.write('\n');
+    }
+
+    /**
+     * Adds an operation, the size and modification time of the source are
+     * recorded so that an apply run can tell if it has changed.
+     *
+     * @param command
+     * @param sourceFile
+     * @param destFile
+     * @throws IOException
+     */
+    synchronized void add(Command command, File sourceFile, File destFile) throws IOException {
+        ScannedFile scannedFile = ScannedFile.of(sourceFile);
+        mWriter.write(command == Command.COPY ? "cp" : "mv");
+        mWriter.write('\t');
+        mWriter.write(Long.toString(scannedFile.getSize()));
+        mWriter.write('\t');
+        mWriter.write(Long.toString(scannedFile.getLastModified()));
+        mWriter.write('\t');
+        mWriter.write(escape(sourceFile.getAbsolutePath()));
+        mWriter.write('\t');
+        mWriter.write(escape(destFile.getAbsolutePath()));
+        mWriter.write('\n');
+        mCount++;
+    }
+
+    synchronized void close() throws IOException {
+        mWriter.close();
+    }
+
+    synchronized int getCount() {
+        return mCount;
+    }
+
+    File getFile() {
+        return mFile;
+    }
+
+    static class Entry {
+
+        private final Command mCommand;
+        private final File mDestFile;
+        private final long mLastModified;
+        private final long mSize;
+        private final File mSourceFile;
+
+        Entry(Command command, long size, long lastModified, File sourceFile, File destFile) {
+            mCommand = command;
+            mSize = size;
+            mLastModified = lastModified;
+            mSourceFile = sourceFile;
+            mDestFile = destFile;
+        }
+
+        Command getCommand() {
+            return mCommand;
+        }
+
+        File getDestFile() {
+            return mDestFile;
+        }
+
+        long getLastModified() {
+            return mLastModified;
+        }
+
+        long getSize() {
+            return mSize;
+        }
+
+        File getSourceFile() {
+            return mSourceFile;
+        }
+
+        /**
+         * Checks that the source is still the file that was planned.
+         */
+        boolean isUnchanged() {
+            return mSourceFile.length() == mSize && mSourceFile.lastModified() == mLastModified;
+        }
+    }
+
+    /**
+     * Reads the operations of a plan in file order, so that a plan of any
+     * size is applied without holding it in memory.
+     */
+    static class Reader implements Closeable {
+
+        private final ResourceBundle mBundle = SystemHelper.getBundle(Plan.class, "Bundle");
+        private final File mFile;
+        private int mLineNumber;
+        private final BufferedReader mReader;
+
+        private Reader(File file) throws IOException {
+            mFile = file;
+            mReader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE);
+
+            mLineNumber = 1;
+            if (!HEADER.equals(mReader.readLine())) {
+                mReader.close();
+                throw new IOException(String.format(mBundle.getString("plan_invalid"), file.getAbsolutePath(), mLineNumber));
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            mReader.close();
+        }
+
+        /**
+         * @return the next operation or null at the end of the plan
+         * @throws IOException if the file can not be read or a line is not
+         * an operation
+         */
+        Entry next() throws IOException {
+            String line;
+            while ((line = mReader.readLine()) != null) {
+                mLineNumber++;
+                if (line.isEmpty()) {
+                    continue;
+                }
+
+                String[] fields = line.split("\t", -1);
+                try {
+                    if (fields.length != 5) {
+                        throw new IllegalArgumentException();
+                    }
+
+                    return new Entry(
+                            getCommand(fields[0]),
+                            Long.parseLong(fields[1]),
+                            Long.parseLong(fields[2]),
+                            new File(unescape(fields[3])),
+                            new File(unescape(fields[4]))
+                    );
+                } catch (IllegalArgumentException ex) {
+                    throw new IOException(String.format(mBundle.getString("plan_invalid"), mFile.getAbsolutePath(), mLineNumber));
+                }
+            }
+
+            return null;
+        }
+    }
+}
@@ -20,9 +20,13 @@ import java.io.File;
 import java.nio.file.FileSystems;
 import java.nio.file.PathMatcher;
 import java.text.SimpleDateFormat;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.ResourceBundle;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -38,6 +42,11 @@ import se.trixon.ttc.tools.fbd.ui.FbdModule;
  */
 public class Profile implements Comparable<Profile>, Cloneable {
 
+    public static final String DEFAULT_FILENAME_DATE_PATTERN = "yyyyMMdd";
+    public static final String DEFAULT_FILENAME_REGEX = "(\\d{8})";
+    @SerializedName("additional_sources")
+    private List<File> mAdditionalSourceDirs = new ArrayList<>();
+    private transient File mApplyFile;
     private transient final ResourceBundle mBundle = SystemHelper.getBundle(Profile.class, "Bundle");
     private transient final ResourceBundle mBundleUI = SystemHelper.getBundle(FbdModule.class, "Bundle");
     @SerializedName("case_base")
@@ -49,6 +58,8 @@ public class Profile implements Comparable<Profile>, Cloneable {
     @SerializedName("operation")
     private Command mCommand;
     private transient SimpleDateFormat mDateFormat;
+    @SerializedName("date_cache")
+    private boolean mDateCache;
     @SerializedName("date_pattern")
     private String mDatePattern;
     @SerializedName("date_source")
@@ -60,10 +71,26 @@ public class Profile implements Comparable<Profile>, Cloneable {
     private File mDestDir;
     @SerializedName("dry_run")
     private boolean mDryRun;
+    @SerializedName("file_order")
+    private FileOrder mFileOrder = FileOrder.NAME;
+    private transient String mFileOrderString;
     @SerializedName("file_pattern")
     private String mFilePattern;
+    private transient DateTimeFormatter mFilenameDateFormatter;
+    @SerializedName("filename_date_pattern")
+    private String mFilenameDatePattern;
+    private transient Pattern mFilenamePattern;
+    @SerializedName("filename_regex")
+    private String mFilenameRegex;
     @SerializedName("follow_links")
     private boolean mFollowLinks;
+    @SerializedName("incremental")
+    private boolean mIncremental;
+    @SerializedName("jobs")
+    private int mJobs = 1;
+    private transient String mJobsString;
+    @SerializedName("journal")
+    private boolean mJournal;
     @SerializedName("last_run")
     private long mLastRun;
     private transient boolean mModeCopy;
@@ -71,12 +98,19 @@ public class Profile implements Comparable<Profile>, Cloneable {
     @SerializedName("name")
     private String mName;
     private transient PathMatcher mPathMatcher;
+    private transient File mPlanFile;
     @SerializedName("recursive")
     private boolean mRecursive;
     @SerializedName("overwrite")
     private boolean mReplaceExisting;
+    private transient boolean mResume;
     @SerializedName("source")
     private File mSourceDir;
+    @SerializedName("streaming")
+    private boolean mStreaming;
+    @SerializedName("transfer_engine")
+    private TransferEngine mTransferEngine = TransferEngine.COMMONS_IO;
+    private transient String mTransferEngineString;
     private transient StringBuilder mValidationErrorBuilder = new StringBuilder();
 
     public Profile() {
@@ -90,11 +124,23 @@ public class Profile implements Comparable<Profile>, Cloneable {
         mDateSourceString = commandLine.getOptionValue("ds");
         mCaseBaseString = commandLine.getOptionValue("case-base");
         mCaseExtString = commandLine.getOptionValue("case-ext");
-
+        mJobsString = commandLine.getOptionValue("jobs");
+        mTransferEngineString = commandLine.getOptionValue("transfer");
+        mFileOrderString = commandLine.getOptionValue("file-order");
+        mFilenameRegex = commandLine.getOptionValue("filename-regex");
+        mFilenameDatePattern = commandLine.getOptionValue("filename-date-pattern");
+        setPlanFileString(commandLine.getOptionValue("plan"));
+        setApplyFileString(commandLine.getOptionValue("apply"));
+
+        mDateCache = commandLine.hasOption("date-cache");
         mDryRun = commandLine.hasOption("dry-run");
         mFollowLinks = commandLine.hasOption("links");
+        mIncremental = commandLine.hasOption("incremental");
+        mResume = commandLine.hasOption("resume");
+        mJournal = mResume || commandLine.hasOption("journal");
         mRecursive = commandLine.hasOption("recursive");
         mReplaceExisting = commandLine.hasOption("overwrite");
+        mStreaming = commandLine.hasOption("stream");
 
         setSourceAndDest(commandLine.getArgs());
     }
@@ -114,6 +160,17 @@ public class Profile implements Comparable<Profile>, Cloneable {
         return mName.compareTo(o.getName());
     }
 
+    /**
+     * @return the source directories besides {@link #getSourceDir()}
+     */
+    public List<File> getAdditionalSourceDirs() {
+        return mAdditionalSourceDirs == null ? new ArrayList<>() : mAdditionalSourceDirs;
+    }
+
+    public File getApplyFile() {
+        return mApplyFile;
+    }
+
     public NameCase getCaseBase() {
         return mCaseBase;
     }
@@ -154,10 +211,42 @@ public class Profile implements Comparable<Profile>, Cloneable {
         return mDestDir == null ? "" : mDestDir.getPath();
     }
 
+    public FileOrder getFileOrder() {
+        return mFileOrder == null ? FileOrder.NAME : mFileOrder;
+    }
+
     public String getFilePattern() {
         return mFilePattern;
     }
 
+    /**
+     * @return the formatter of the date found by {@link #getFilenamePattern()},
+     * compiled by {@link #isValid()}
+     */
+    public DateTimeFormatter getFilenameDateFormatter() {
+        return mFilenameDateFormatter;
+    }
+
+    public String getFilenameDatePattern() {
+        return mFilenameDatePattern;
+    }
+
+    /**
+     * @return the regex that finds the date in a file name, the first group
+     * or else the whole match is the date, compiled by {@link #isValid()}
+     */
+    public Pattern getFilenamePattern() {
+        return mFilenamePattern;
+    }
+
+    public String getFilenameRegex() {
+        return mFilenameRegex;
+    }
+
+    public int getJobs() {
+        return Math.max(1, mJobs);
+    }
+
     public long getLastRun() {
         return mLastRun;
     }
@@ -174,6 +263,10 @@ public class Profile implements Comparable<Profile>, Cloneable {
         return mPathMatcher;
     }
 
+    public File getPlanFile() {
+        return mPlanFile;
+    }
+
     public File getSourceDir() {
         return mSourceDir;
     }
@@ -182,18 +275,48 @@ public class Profile implements Comparable<Profile>, Cloneable {
         return mSourceDir == null ? "" : mSourceDir.getPath();
     }
 
+    /**
+     * @return the source directory followed by the additional ones
+     */
+    public List<File> getSourceDirs() {
+        List<File> sourceDirs = new ArrayList<>();
+        sourceDirs.add(mSourceDir);
+        sourceDirs.addAll(getAdditionalSourceDirs());
+
+        return sourceDirs;
+    }
+
+    public TransferEngine getTransferEngine() {
+        return mTransferEngine == null ? TransferEngine.COMMONS_IO : mTransferEngine;
+    }
+
     public String getValidationError() {
         return mValidationErrorBuilder.toString();
     }
 
+    public boolean isDateCache() {
+        return mDateCache;
+    }
+
+    /**
+     * A planning run is always a dry run.
+     */
     public boolean isDryRun() {
-        return mDryRun;
+        return mDryRun || mPlanFile != null;
     }
 
     public boolean isFollowLinks() {
         return mFollowLinks;
     }
 
+    public boolean isIncremental() {
+        return mIncremental;
+    }
+
+    public boolean isJournal() {
+        return mJournal;
+    }
+
     public boolean isRecursive() {
         return mRecursive;
     }
@@ -202,6 +325,14 @@ public class Profile implements Comparable<Profile>, Cloneable {
         return mReplaceExisting;
     }
 
+    public boolean isResume() {
+        return mResume;
+    }
+
+    public boolean isStreaming() {
+        return mStreaming;
+    }
+
     public boolean isValid() {
         mValidationErrorBuilder = new StringBuilder();
 
@@ -231,6 +362,22 @@ public class Profile implements Comparable<Profile>, Cloneable {
             }
         }
 
+        if (mDateSource == DateSource.FILENAME_PATTERN) {
+            String filenameRegex = StringUtils.defaultIfBlank(mFilenameRegex, DEFAULT_FILENAME_REGEX);
+            try {
+                mFilenamePattern = Pattern.compile(filenameRegex);
+            } catch (Exception e) {
+                addValidationError(String.format(mBundle.getString("invalid_filename_regex"), filenameRegex));
+            }
+
+            String filenameDatePattern = StringUtils.defaultIfBlank(mFilenameDatePattern, DEFAULT_FILENAME_DATE_PATTERN);
+            try {
+                mFilenameDateFormatter = DateTimeFormatter.ofPattern(filenameDatePattern, Preferences.getInstance().general().getLocale());
+            } catch (Exception e) {
+                addValidationError(String.format(mBundle.getString("invalid_filename_date_pattern"), filenameDatePattern));
+            }
+        }
+
         if (mCaseBaseString != null) {
             mCaseBase = NameCase.getCase(mCaseBaseString);
             if (mCaseBase == null) {
@@ -246,10 +393,51 @@ public class Profile implements Comparable<Profile>, Cloneable {
             }
         }
 
+        if (mJobsString != null) {
+            try {
+                mJobs = Integer.parseInt(mJobsString);
+                if (mJobs < 1) {
+                    throw new NumberFormatException();
+                }
+            } catch (NumberFormatException e) {
+                addValidationError(String.format(mBundle.getString("invalid_jobs"), mJobsString));
+            }
+        }
+
+        if (mTransferEngineString != null) {
+            try {
+                mTransferEngine = TransferEngine.valueOf(mTransferEngineString.toUpperCase());
+            } catch (Exception e) {
+                addValidationError(String.format(mBundle.getString("invalid_transfer_engine"), mTransferEngineString));
+            }
+        }
+
+        if (mFileOrderString != null) {
+            try {
+                mFileOrder = FileOrder.valueOf(mFileOrderString.toUpperCase());
+            } catch (Exception e) {
+                addValidationError(String.format(mBundle.getString("invalid_file_order"), mFileOrderString));
+            }
+        }
+
+        if (mPlanFile != null && mApplyFile != null) {
+            addValidationError(mBundle.getString("invalid_plan_apply"));
+        }
+
+        if (mApplyFile != null && !mApplyFile.isFile()) {
+            addValidationError(String.format(mBundle.getString("invalid_apply_file"), mApplyFile));
+        }
+
         if (mSourceDir == null || !mSourceDir.isDirectory()) {
             addValidationError(String.format(mBundle.getString("invalid_source_dir"), mSourceDir));
         }
 
+        for (File sourceDir : getAdditionalSourceDirs()) {
+            if (sourceDir == null || !sourceDir.isDirectory()) {
+                addValidationError(String.format(mBundle.getString("invalid_source_dir"), sourceDir));
+            }
+        }
+
         if (mDestDir == null || !mDestDir.isDirectory()) {
             addValidationError(String.format(mBundle.getString("invalid_dest_dir"), mDestDir));
         }
@@ -257,6 +445,14 @@ public class Profile implements Comparable<Profile>, Cloneable {
         return mValidationErrorBuilder.length() == 0;
     }
 
+    public void setAdditionalSourceDirs(List<File> additionalSourceDirs) {
+        mAdditionalSourceDirs = additionalSourceDirs;
+    }
+
+    public void setApplyFileString(String applyFileString) {
+        mApplyFile = applyFileString == null ? null : new File(applyFileString);
+    }
+
     public void setCaseBase(NameCase caseBase) {
         mCaseBase = caseBase;
     }
@@ -269,6 +465,10 @@ public class Profile implements Comparable<Profile>, Cloneable {
         mCommand = operationMode;
     }
 
+    public void setDateCache(boolean dateCache) {
+        mDateCache = dateCache;
+    }
+
     public void setDatePattern(String datePattern) {
         mDatePattern = datePattern;
     }
@@ -293,14 +493,46 @@ public class Profile implements Comparable<Profile>, Cloneable {
         mDryRun = dryRun;
     }
 
+    public void setFileOrder(FileOrder fileOrder) {
+        mFileOrder = fileOrder;
+    }
+
+    public void setFileOrderString(String fileOrderString) {
+        mFileOrderString = fileOrderString;
+    }
+
     public void setFilePattern(String filePattern) {
         mFilePattern = filePattern;
     }
 
+    public void setFilenameDatePattern(String filenameDatePattern) {
+        mFilenameDatePattern = filenameDatePattern;
+    }
+
+    public void setFilenameRegex(String filenameRegex) {
+        mFilenameRegex = filenameRegex;
+    }
+
     public void setFollowLinks(boolean links) {
         mFollowLinks = links;
     }
 
+    public void setIncremental(boolean incremental) {
+        mIncremental = incremental;
+    }
+
+    public void setJobs(int jobs) {
+        mJobs = jobs;
+    }
+
+    public void setJobsString(String jobsString) {
+        mJobsString = jobsString;
+    }
+
+    public void setJournal(boolean journal) {
+        mJournal = journal;
+    }
+
     public void setLastRun(long lastRun) {
         mLastRun = lastRun;
     }
@@ -325,6 +557,10 @@ public class Profile implements Comparable<Profile>, Cloneable {
         mPathMatcher = pathMatcher;
     }
 
+    public void setPlanFileString(String planFileString) {
+        mPlanFile = planFileString == null ? null : new File(planFileString);
+    }
+
     public void setRecursive(boolean recursive) {
         mRecursive = recursive;
     }
@@ -333,8 +569,16 @@ public class Profile implements Comparable<Profile>, Cloneable {
         mReplaceExisting = replaceExisting;
     }
 
+    public void setResume(boolean resume) {
+        mResume = resume;
+    }
+
+    /**
+     * @param args one or more sources followed by the destination, a file
+     * pattern can only be given with the first source
+     */
     public void setSourceAndDest(String[] args) {
-        if (args.length == 2) {
+        if (args.length >= 2) {
             String source = args[0];
             File sourceFile = new File(source);
 
@@ -347,7 +591,12 @@ public class Profile implements Comparable<Profile>, Cloneable {
                 mFilePattern = FilenameUtils.getName(source);
             }
 
-            setDestDir(new File(args[1]));
+            mAdditionalSourceDirs = new ArrayList<>();
+            for (int i = 1; i < args.length - 1; i++) {
+                mAdditionalSourceDirs.add(new File(args[i]));
+            }
+
+            setDestDir(new File(args[args.length - 1]));
         } else {
             addValidationError(mBundle.getString("invalid_arg_count"));
         }
@@ -357,6 +606,18 @@ public class Profile implements Comparable<Profile>, Cloneable {
         mSourceDir = source;
     }
 
+    public void setStreaming(boolean streaming) {
+        mStreaming = streaming;
+    }
+
+    public void setTransferEngine(TransferEngine transferEngine) {
+        mTransferEngine = transferEngine;
+    }
+
+    public void setTransferEngineString(String transferEngineString) {
+        mTransferEngineString = transferEngineString;
+    }
+
     public String toDebugString() {
         isValid();
         String s = String.format(mBundle.getString("profile"),
@@ -370,11 +631,26 @@ public class Profile implements Comparable<Profile>, Cloneable {
 
         StringBuilder b = new StringBuilder(s);
 
+        for (File sourceDir : getAdditionalSourceDirs()) {
+            conditionalAppendDebugOption(b, true, String.format(mBundle.getString("additional_source"), sourceDir));
+        }
         conditionalAppendDebugOption(b, mFollowLinks, Dict.FOLLOW_LINKS.toString());
         conditionalAppendDebugOption(b, mRecursive, Dict.RECURSIVE.toString());
         conditionalAppendDebugOption(b, mReplaceExisting, Dict.REPLACE.toString());
         conditionalAppendDebugOption(b, mCaseBase != NameCase.UNCHANGED, Dict.BASENAME.toString() + " " + mCaseBase);
         conditionalAppendDebugOption(b, mCaseExt != NameCase.UNCHANGED, Dict.EXTENSION.toString() + " " + mCaseExt);
+        conditionalAppendDebugOption(b, mDateSource == DateSource.FILENAME_PATTERN, String.format(mBundle.getString("filename_date"),
+                StringUtils.defaultIfBlank(mFilenameRegex, DEFAULT_FILENAME_REGEX),
+                StringUtils.defaultIfBlank(mFilenameDatePattern, DEFAULT_FILENAME_DATE_PATTERN)));
+        conditionalAppendDebugOption(b, mDateCache, mBundle.getString("date_cache"));
+        conditionalAppendDebugOption(b, mStreaming, mBundle.getString("streaming"));
+        conditionalAppendDebugOption(b, mJournal, mBundle.getString("journal"));
+        conditionalAppendDebugOption(b, mIncremental, mBundle.getString("incremental"));
+        conditionalAppendDebugOption(b, getFileOrder() != FileOrder.NAME, String.format(mBundle.getString("file_order"), getFileOrder()));
+        conditionalAppendDebugOption(b, mPlanFile != null, String.format(mBundle.getString("plan"), mPlanFile));
+        conditionalAppendDebugOption(b, mApplyFile != null, String.format(mBundle.getString("apply"), mApplyFile));
+        conditionalAppendDebugOption(b, getJobs() > 1, String.format(mBundle.getString("jobs"), getJobs()));
+        conditionalAppendDebugOption(b, getTransferEngine() != TransferEngine.COMMONS_IO, String.format(mBundle.getString("transfer_engine"), getTransferEngine()));
 
         return b.toString();
     }
@@ -49,6 +49,10 @@ public class ProfileManager {
         }
     }
 
+    public File getDirectory() {
+        return mDirectory;
+    }
+
     public Profile getProfile(String name) {
         for (Profile profile : mProfilesHolder.getProfiles()) {
             if (profile.getName().equalsIgnoreCase(name)) {
@@ -98,7 +102,9 @@ public class ProfileManager {
     }
 
     public void save() throws IOException {
-        mProfilesHolder.save(mProfileFile);
+        if (mProfilesHolder != null) {
+            mProfilesHolder.save(mProfileFile);
+        }
     }
 
     private static class Holder {
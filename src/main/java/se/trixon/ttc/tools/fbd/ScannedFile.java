@@ -0,0 +1,85 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.ttc.tools.fbd;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * A source file with the attributes read while scanning, so that date
+ * resolution and metrics do not have to stat it again.
+ *
+ * The attributes are a snapshot, use the File methods where the current
+ * state matters.
+ *
+ * @author Patrik Karlström
+ */
+class ScannedFile extends File {
+
+    /**
+     * The inode number of a file that was not scanned with the unix view.
+     */
+    static final long NO_INODE = -1;
+
+    private final long mCreated;
+    private final long mInode;
+    private final long mLastModified;
+    private final long mSize;
+
+    /**
+     * @param file
+     * @return file itself if it was scanned, otherwise a ScannedFile with
+     * its current attributes
+     * @throws IOException
+     */
+    static ScannedFile of(File file) throws IOException {
+        if (file instanceof ScannedFile) {
+            return (ScannedFile) file;
+        }
+
+        return new ScannedFile(file.getPath(), Files.readAttributes(file.toPath(), BasicFileAttributes.class), NO_INODE);
+    }
+
+    ScannedFile(String path, BasicFileAttributes attributes, long inode) {
+        this(path, attributes.size(), attributes.lastModifiedTime().toMillis(), attributes.creationTime().toMillis(), inode);
+    }
+
+    ScannedFile(String path, long size, long lastModified, long created, long inode) {
+        super(path);
+        mSize = size;
+        mLastModified = lastModified;
+        mCreated = created;
+        mInode = inode;
+    }
+
+    long getCreated() {
+        return mCreated;
+    }
+
+    long getInode() {
+        return mInode;
+    }
+
+    long getLastModified() {
+        return mLastModified;
+    }
+
+    long getSize() {
+        return mSize;
+    }
+}
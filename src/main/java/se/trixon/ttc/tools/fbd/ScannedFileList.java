@@ -0,0 +1,97 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.ttc.tools.fbd;
+
+import java.io.File;
+import java.util.Arrays;
+import se.trixon.ttc.tools.FileList;
+
+/**
+ * A {@link FileList} that keeps the scanned attributes of its files in
+ * parallel arrays and hands out {@link ScannedFile}s.
+ *
+ * @author Patrik Karlström
+ */
+class ScannedFileList extends FileList {
+
+    private static final long NOT_SCANNED = -1;
+
+    private long[] mCreated = new long[0];
+    private long[] mInodes = new long[0];
+    private long[] mLastModified = new long[0];
+    private long[] mSizes = new long[0];
+
+    ScannedFileList() {
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        mCreated = new long[0];
+        mInodes = new long[0];
+        mLastModified = new long[0];
+        mSizes = new long[0];
+    }
+
+    @Override
+    public long getMemoryUsage() {
+        return super.getMemoryUsage() + mSizes.length * 32L;
+    }
+
+    @Override
+    protected int addEntry(File file) {
+        int entry = super.addEntry(file);
+
+        if (entry == mSizes.length) {
+            int capacity = Math.max(1024, entry + (entry >> 1));
+            mCreated = Arrays.copyOf(mCreated, capacity);
+            mInodes = Arrays.copyOf(mInodes, capacity);
+            mLastModified = Arrays.copyOf(mLastModified, capacity);
+            mSizes = Arrays.copyOf(mSizes, capacity);
+        }
+
+        if (file instanceof ScannedFile) {
+            ScannedFile scannedFile = (ScannedFile) file;
+            mCreated[entry] = scannedFile.getCreated();
+            mInodes[entry] = scannedFile.getInode();
+            mLastModified[entry] = scannedFile.getLastModified();
+            mSizes[entry] = scannedFile.getSize();
+        } else {
+            mInodes[entry] = ScannedFile.NO_INODE;
+            mSizes[entry] = NOT_SCANNED;
+        }
+
+        return entry;
+    }
+
+    @Override
+    protected File createFile(int entry, String path) {
+        if (mSizes[entry] == NOT_SCANNED) {
+            return new File(path);
+        }
+
+        return new ScannedFile(path, mSizes[entry], mLastModified[entry], mCreated[entry], mInodes[entry]);
+    }
+
+    /**
+     * @param index
+     * @return the inode number of the file at index, or
+     * {@link ScannedFile#NO_INODE}
+     */
+    long getInode(int index) {
+        return mInodes[getEntry(index)];
+    }
+}
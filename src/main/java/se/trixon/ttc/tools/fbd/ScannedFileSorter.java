@@ -0,0 +1,65 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.ttc.tools.fbd;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import se.trixon.ttc.tools.ExternalFileSorter;
+import se.trixon.ttc.tools.FileList;
+
+/**
+ * An {@link ExternalFileSorter} that keeps the scanned attributes of its
+ * files through the runs.
+ *
+ * @author Patrik Karlström
+ */
+class ScannedFileSorter extends ExternalFileSorter {
+
+    ScannedFileSorter(long memoryBudget) {
+        super(memoryBudget);
+    }
+
+    @Override
+    protected FileList createList() {
+        return new ScannedFileList();
+    }
+
+    @Override
+    protected File readFile(DataInputStream inputStream) throws IOException {
+        String path = inputStream.readUTF();
+        if (!inputStream.readBoolean()) {
+            return new File(path);
+        }
+
+        return new ScannedFile(path, inputStream.readLong(), inputStream.readLong(), inputStream.readLong(), inputStream.readLong());
+    }
+
+    @Override
+    protected void writeFile(DataOutputStream outputStream, File file) throws IOException {
+        outputStream.writeUTF(file.getPath());
+        outputStream.writeBoolean(file instanceof ScannedFile);
+
+        if (file instanceof ScannedFile) {
+            ScannedFile scannedFile = (ScannedFile) file;
+            outputStream.writeLong(scannedFile.getSize());
+            outputStream.writeLong(scannedFile.getLastModified());
+            outputStream.writeLong(scannedFile.getCreated());
+            outputStream.writeLong(scannedFile.getInode());
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.ttc.tools.fbd;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ResourceBundle;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import org.apache.commons.io.FileUtils;
+import se.trixon.almond.util.SystemHelper;
+import se.trixon.ttc.tools.fbd.ui.FbdModule;
+
+/**
+ * Ways of copying file content. Every engine preserves the last modified
+ * date of the source, like {@link FileUtils#copyFile(File, File)} does.
+ *
+ * @author Patrik Karlström
+ */
+public enum TransferEngine {
+
+    /**
+     * FileUtils.copyFile from commons-io.
+     */
+    COMMONS_IO {
+        @Override
+        void transfer(File source, File dest) throws IOException {
+            FileUtils.copyFile(source, dest);
+        }
+    },
+    /**
+     * FileChannel.transferTo, which lets the kernel move the data
+     * (copy_file_range or sendfile on Linux). Falls back to pooled direct
+     * buffers if the channel refuses to transfer.
+     */
+    CHANNEL {
+        @Override
+        void transfer(File source, File dest) throws IOException {
+            try (FileChannel input = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+                    FileChannel output = openOutput(dest)) {
+                long size = input.size();
+                long position = 0;
+
+                while (position < size) {
+                    long count = input.transferTo(position, size - position, output);
+                    if (count <= 0) {
+                        copyBuffered(input, output, position, size);
+                        break;
+                    }
+                    position += count;
+                }
+            }
+
+            finish(source, dest);
+        }
+    },
+    /**
+     * Read and write through a pool of direct buffers.
+     */
+    DIRECT_BUFFER {
+        @Override
+        void transfer(File source, File dest) throws IOException {
+            try (FileChannel input = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+                    FileChannel output = openOutput(dest)) {
+                copyBuffered(input, output, 0, input.size());
+            }
+
+            finish(source, dest);
+        }
+    };
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final BlockingQueue<ByteBuffer> sBufferPool = new ArrayBlockingQueue<>(16);
+    private final ResourceBundle mBundleUI = SystemHelper.getBundle(FbdModule.class, "Bundle");
+
+    private static void copyBuffered(FileChannel input, FileChannel output, long position, long size) throws IOException {
+        ByteBuffer buffer = sBufferPool.poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+
+        try {
+            input.position(position);
+            output.position(position);
+
+            while (position < size) {
+                buffer.clear();
+                int read = input.read(buffer);
+                if (read < 0) {
+                    break;
+                }
+
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    output.write(buffer);
+                }
+                position += read;
+            }
+        } finally {
+            sBufferPool.offer(buffer);
+        }
+    }
+
+    private static void finish(File source, File dest) throws IOException {
+        if (source.length() != dest.length()) {
+            throw new IOException(String.format("Failed to copy full contents from '%s' to '%s'", source, dest));
+        }
+
+        dest.setLastModified(source.lastModified());
+    }
+
+    private static FileChannel openOutput(File dest) throws IOException {
+        return FileChannel.open(dest.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    private TransferEngine() {
+    }
+
+    @Override
+    public String toString() {
+        return mBundleUI.getString("transferEngine_" + name().toLowerCase());
+    }
+
+    abstract void transfer(File source, File dest) throws IOException;
+}
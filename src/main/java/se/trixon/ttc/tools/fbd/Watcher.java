@@ -0,0 +1,283 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.ttc.tools.fbd;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import se.trixon.almond.util.SystemHelper;
+
+/**
+ * Watches the source directories of a profile and files new files by date as
+ * soon as they are completely written.
+ *
+ * A file is considered complete when its size and modification time have
+ * not changed for {@link #QUIET_MILLIS}. Complete files are handed to one
+ * {@link Operation} in batches, so the source tree is never walked again
+ * after the directories have been registered. The operation keeps its date
+ * cache and journal open for the whole session.
+ *
+ * @author Patrik Karlström
+ */
+class Watcher {
+
+    private static final long POLL_MILLIS = 500;
+    private static final long QUIET_MILLIS = 2000;
+
+    private final ResourceBundle mBundle = SystemHelper.getBundle(Watcher.class, "Bundle");
+    private final Path mDestDir;
+    private final Map<WatchKey, Path> mDirs = new HashMap<>();
+    private final OperationListener mListener;
+    private volatile Operation mOperation;
+    private final Map<File, PendingFile> mPendingFiles = new LinkedHashMap<>();
+    private final Profile mProfile;
+    private final CountDownLatch mStopped = new CountDownLatch(1);
+    private volatile WatchService mWatchService;
+
+    Watcher(OperationListener listener, Profile profile) {
+        mListener = listener;
+        mProfile = profile;
+        mDestDir = profile.getDestDir().toPath().toAbsolutePath().normalize();
+    }
+
+    /**
+     * Watches until the thread is interrupted or {@link #stop()} is called.
+     *
+     * @throws IOException
+     */
+    void start() throws IOException {
+        mWatchService = FileSystems.getDefault().newWatchService();
+        Operation operation = new Operation(mListener, mProfile);
+        mOperation = operation;
+        operation.open();
+
+        try {
+            for (File file : mProfile.getSourceDirs()) {
+                Path sourceDir = file.toPath().toAbsolutePath().normalize();
+                register(sourceDir, false);
+                mListener.onOperationLog(String.format(mBundle.getString("watch_start"), sourceDir));
+            }
+
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = mWatchService.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+
+                while (key != null) {
+                    processEvents(key);
+                    key = mWatchService.poll();
+                }
+
+                List<File> files = collectStableFiles();
+                if (!files.isEmpty()) {
+                    operation.start(files);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ex) {
+            //Stop watching
+        } finally {
+            mWatchService.close();
+            operation.close();
+            mStopped.countDown();
+        }
+    }
+
+    /**
+     * Stops a watch from another thread, such as a shutdown hook, and waits
+     * until its operation has been closed. A batch that is being processed
+     * is cancelled, transfers in progress are completed.
+     */
+    void stop() {
+        WatchService watchService = mWatchService;
+        if (watchService == null) {
+            return;
+        }
+
+        Operation operation = mOperation;
+        if (operation != null) {
+            operation.getContext().cancel();
+        }
+
+        try {
+            watchService.close();
+            mStopped.await();
+        } catch (IOException | InterruptedException ex) {
+            //nvm
+        }
+    }
+
+    private void addPending(Path path) {
+        if (path.startsWith(mDestDir) || !mProfile.getPathMatcher().matches(path.getFileName())) {
+            return;
+        }
+
+        File file = path.toFile();
+        if (file.isFile()) {
+            PendingFile pendingFile = mPendingFiles.get(file);
+            if (pendingFile == null) {
+                mPendingFiles.put(file, new PendingFile(file));
+            } else {
+                pendingFile.update(file);
+            }
+        }
+    }
+
+    private List<File> collectStableFiles() {
+        long now = System.currentTimeMillis();
+        List<File> files = new ArrayList<>();
+
+        for (Iterator<Map.Entry<File, PendingFile>> iterator = mPendingFiles.entrySet().iterator(); iterator.hasNext();) {
+            Map.Entry<File, PendingFile> entry = iterator.next();
+            File file = entry.getKey();
+            PendingFile pendingFile = entry.getValue();
+
+            if (!file.isFile()) {
+                iterator.remove();
+            } else if (!pendingFile.update(file) && now - pendingFile.mStableSince >= QUIET_MILLIS) {
+                files.add(file);
+                iterator.remove();
+            }
+        }
+
+        return files;
+    }
+
+    private void processEvents(WatchKey key) {
+        Path dir = mDirs.get(key);
+        if (dir == null) {
+            key.cancel();
+            return;
+        }
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            WatchEvent.Kind<?> kind = event.kind();
+
+            if (kind == StandardWatchEventKinds.OVERFLOW) {
+                //Events were lost, pick up whatever is in the directory now
+                File[] files = dir.toFile().listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        addPending(file.toPath());
+                    }
+                }
+            } else {
+                Path path = dir.resolve((Path) event.context());
+
+                if (kind == StandardWatchEventKinds.ENTRY_CREATE && mProfile.isRecursive() && Files.isDirectory(path)) {
+                    try {
+                        register(path, true);
+                    } catch (IOException ex) {
+                        mListener.onOperationLog(ex.getLocalizedMessage());
+                    }
+                } else {
+                    addPending(path);
+                }
+            }
+        }
+
+        if (!key.reset()) {
+            mDirs.remove(key);
+        }
+    }
+
+    /**
+     * Registers dir, and its subdirectories if the profile is recursive.
+     *
+     * @param dir
+     * @param created true for a directory created while watching, its files
+     * may have been written before it was registered
+     * @throws IOException
+     */
+    private void register(Path dir, boolean created) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path subDir, BasicFileAttributes attrs) throws IOException {
+                if (subDir.startsWith(mDestDir) || (!mProfile.isRecursive() && !subDir.equals(dir))) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+
+                WatchKey key = subDir.register(mWatchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+                mDirs.put(key, subDir);
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (created) {
+                    addPending(file);
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static class PendingFile {
+
+        private long mLastModified;
+        private long mSize;
+        private long mStableSince;
+
+        PendingFile(File file) {
+            mLastModified = file.lastModified();
+            mSize = file.length();
+            mStableSince = System.currentTimeMillis();
+        }
+
+        /**
+         * @return true if the file changed since the last update
+         */
+        boolean update(File file) {
+            long lastModified = file.lastModified();
+            long size = file.length();
+
+            if (lastModified != mLastModified || size != mSize) {
+                mLastModified = lastModified;
+                mSize = size;
+                mStableSince = System.currentTimeMillis();
+
+                return true;
+            }
+
+            return false;
+        }
+    }
+}
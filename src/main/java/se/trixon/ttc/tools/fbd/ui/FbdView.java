@@ -58,9 +58,11 @@ import se.trixon.almond.util.icons.material.MaterialIcon;
 import static se.trixon.ttc.MainApp.ICON_SIZE_PROFILE;
 import se.trixon.ttc.Preferences;
 import se.trixon.ttc.RunState;
+import se.trixon.ttc.tools.OperationContext;
 import se.trixon.ttc.tools.fbd.NameCase;
 import se.trixon.ttc.tools.fbd.Operation;
 import se.trixon.ttc.tools.fbd.OperationListener;
+import se.trixon.ttc.tools.fbd.OperationMetrics;
 import se.trixon.ttc.tools.fbd.Profile;
 import se.trixon.ttc.tools.fbd.ProfileManager;
 
@@ -79,6 +81,7 @@ public class FbdView extends BorderPane {
     private Profile mLastRunProfile;
     private ListView<Profile> mListView;
     private final FbdModule mModule;
+    private OperationContext mOperationContext;
     private OperationListener mOperationListener;
     private Thread mOperationThread;
     private final Preferences mPreferences = Preferences.getInstance();
@@ -98,7 +101,7 @@ public class FbdView extends BorderPane {
     }
 
     void doCancel() {
-        mOperationThread.interrupt();
+        mOperationContext.cancel();
     }
 
     void doNavHome() {
@@ -181,6 +184,11 @@ public class FbdView extends BorderPane {
         mOperationListener = new OperationListener() {
             private boolean mSuccess;
 
+            @Override
+            public boolean isLogEnabled() {
+                return true;
+            }
+
             @Override
             public void onOperationError(String message) {
                 mProgressPanel.err(message);
@@ -215,6 +223,11 @@ public class FbdView extends BorderPane {
                 mProgressPanel.out(message);
             }
 
+            @Override
+            public void onOperationMetrics(OperationMetrics metrics) {
+                mProgressPanel.setMetrics(metrics);
+            }
+
             @Override
             public void onOperationProcessingStarted() {
                 mProgressPanel.setProgress(-1);
@@ -294,8 +307,9 @@ public class FbdView extends BorderPane {
 
                 if (profile.isValid()) {
                     mLastRunProfile = profile;
+                    mOperationContext = new OperationContext();
                     mOperationThread = new Thread(() -> {
-                        Operation operation = new Operation(mOperationListener, profile);
+                        Operation operation = new Operation(mOperationListener, profile, mOperationContext);
                         operation.start();
                     });
                     mOperationThread.setName("Operation");
@@ -15,11 +15,16 @@
  */
 package se.trixon.ttc.tools.fbd.ui;
 
+import java.io.File;
 import java.text.SimpleDateFormat;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.ResourceBundle;
 import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import javafx.application.Platform;
 import javafx.beans.value.ObservableValue;
 import javafx.collections.FXCollections;
@@ -28,26 +33,33 @@ import javafx.scene.control.Button;
 import javafx.scene.control.CheckBox;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
 import javafx.scene.control.SelectionMode;
+import javafx.scene.control.Spinner;
 import javafx.scene.control.TextField;
 import javafx.scene.control.Tooltip;
 import javafx.scene.layout.ColumnConstraints;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.stage.DirectoryChooser;
 import org.apache.commons.lang3.StringUtils;
 import org.controlsfx.validation.ValidationResult;
 import org.controlsfx.validation.ValidationSupport;
 import org.controlsfx.validation.Validator;
 import se.trixon.almond.util.Dict;
 import se.trixon.almond.util.SystemHelper;
+import se.trixon.almond.util.fx.FxHelper;
 import se.trixon.almond.util.fx.control.FileChooserPane;
 import se.trixon.almond.util.fx.control.FileChooserPane.ObjectMode;
 import se.trixon.ttc.Preferences;
 import se.trixon.ttc.tools.fbd.DateSource;
+import se.trixon.ttc.tools.fbd.FileOrder;
 import se.trixon.ttc.tools.fbd.NameCase;
 import se.trixon.ttc.tools.fbd.Operation.Command;
 import se.trixon.ttc.tools.fbd.Profile;
 import se.trixon.ttc.tools.fbd.ProfileManager;
+import se.trixon.ttc.tools.fbd.TransferEngine;
 
 /**
  *
@@ -55,15 +67,23 @@ import se.trixon.ttc.tools.fbd.ProfileManager;
  */
 public class ProfilePanel extends GridPane {
 
+    private ListView<File> mAdditionalSourcesListView;
     private final ResourceBundle mBundleUI = SystemHelper.getBundle(FbdModule.class, "Bundle");
     private ComboBox<NameCase> mCaseBaseComboBox;
     private ComboBox<NameCase> mCaseExtComboBox;
+    private CheckBox mDateCacheCheckBox;
     private ComboBox<String> mDatePatternComboBox;
     private Label mDatePatternLabel;
     private ComboBox<DateSource> mDateSourceComboBox;
     private TextField mDescTextField;
     private FileChooserPane mDestChooserPane;
+    private ComboBox<FileOrder> mFileOrderComboBox;
     private ComboBox<String> mFilePatternComboBox;
+    private TextField mFilenameDatePatternTextField;
+    private TextField mFilenameRegexTextField;
+    private CheckBox mIncrementalCheckBox;
+    private Spinner<Integer> mJobsSpinner;
+    private CheckBox mJournalCheckBox;
     private CheckBox mLinksCheckBox;
     private TextField mNameTextField;
     private Button mOkButton;
@@ -74,6 +94,8 @@ public class ProfilePanel extends GridPane {
     private CheckBox mRecursiveCheckBox;
     private CheckBox mReplaceCheckBox;
     private FileChooserPane mSourceChooserPane;
+    private CheckBox mStreamingCheckBox;
+    private ComboBox<TransferEngine> mTransferEngineComboBox;
 
     public ProfilePanel(Profile p) {
         mProfile = p;
@@ -82,16 +104,26 @@ public class ProfilePanel extends GridPane {
         mNameTextField.setText(p.getName());
         mDescTextField.setText(p.getDescription());
         mSourceChooserPane.setPath(p.getSourceDir());
+        mAdditionalSourcesListView.getItems().setAll(p.getAdditionalSourceDirs());
         mDestChooserPane.setPath(p.getDestDir());
         mFilePatternComboBox.setValue(p.getFilePattern());
         mDateSourceComboBox.setValue(p.getDateSource());
         mDatePatternComboBox.setValue(p.getDatePattern());
+        mFilenameRegexTextField.setText(p.getFilenameRegex());
+        mFilenameDatePatternTextField.setText(p.getFilenameDatePattern());
         mOperationComboBox.getSelectionModel().select(p.getCommand());
         mLinksCheckBox.setSelected(p.isFollowLinks());
         mRecursiveCheckBox.setSelected(p.isRecursive());
         mReplaceCheckBox.setSelected(p.isReplaceExisting());
         mCaseBaseComboBox.setValue(p.getCaseBase());
         mCaseExtComboBox.setValue(p.getCaseExt());
+        mJobsSpinner.getValueFactory().setValue(p.getJobs());
+        mTransferEngineComboBox.setValue(p.getTransferEngine());
+        mFileOrderComboBox.setValue(p.getFileOrder());
+        mStreamingCheckBox.setSelected(p.isStreaming());
+        mDateCacheCheckBox.setSelected(p.isDateCache());
+        mJournalCheckBox.setSelected(p.isJournal());
+        mIncrementalCheckBox.setSelected(p.isIncremental());
 
         initListeners();
 
@@ -105,16 +137,26 @@ public class ProfilePanel extends GridPane {
         mProfile.setName(mNameTextField.getText().trim());
         mProfile.setDescription(mDescTextField.getText());
         mProfile.setSourceDir(mSourceChooserPane.getPath());
+        mProfile.setAdditionalSourceDirs(new ArrayList<>(mAdditionalSourcesListView.getItems()));
         mProfile.setDestDir(mDestChooserPane.getPath());
         mProfile.setFilePattern(mFilePatternComboBox.getValue());
         mProfile.setDateSource(mDateSourceComboBox.getValue());
         mProfile.setDatePattern(mDatePatternComboBox.getValue());
+        mProfile.setFilenameRegex(StringUtils.trimToNull(mFilenameRegexTextField.getText()));
+        mProfile.setFilenameDatePattern(StringUtils.trimToNull(mFilenameDatePatternTextField.getText()));
         mProfile.setOperation(mOperationComboBox.getSelectionModel().getSelectedIndex());
         mProfile.setFollowLinks(mLinksCheckBox.isSelected());
         mProfile.setRecursive(mRecursiveCheckBox.isSelected());
         mProfile.setReplaceExisting(mReplaceCheckBox.isSelected());
         mProfile.setCaseBase(mCaseBaseComboBox.getValue());
         mProfile.setCaseExt(mCaseExtComboBox.getValue());
+        mProfile.setJobs(mJobsSpinner.getValue());
+        mProfile.setTransferEngine(mTransferEngineComboBox.getValue());
+        mProfile.setFileOrder(mFileOrderComboBox.getValue());
+        mProfile.setStreaming(mStreamingCheckBox.isSelected());
+        mProfile.setDateCache(mDateCacheCheckBox.isSelected());
+        mProfile.setJournal(mJournalCheckBox.isSelected());
+        mProfile.setIncremental(mIncrementalCheckBox.isSelected());
     }
 
     void setOkButton(Button button) {
@@ -124,6 +166,7 @@ public class ProfilePanel extends GridPane {
     private void createUI() {
         //setGridLinesVisible(true);
 
+        Label additionalSourcesLabel = new Label(mBundleUI.getString("additional_sources"));
         Label nameLabel = new Label(Dict.NAME.toString());
         Label descLabel = new Label(Dict.DESCRIPTION.toString());
         Label filePatternLabel = new Label(Dict.FILE_PATTERN.toString());
@@ -132,10 +175,19 @@ public class ProfilePanel extends GridPane {
         Label operationLabel = new Label(Dict.OPERATION.toString());
         Label caseBaseLabel = new Label(Dict.BASENAME.toString());
         Label caseExtLabel = new Label(Dict.EXTENSION.toString());
+        Label jobsLabel = new Label(mBundleUI.getString("jobs"));
+        Label transferEngineLabel = new Label(mBundleUI.getString("transfer_engine"));
+        Label fileOrderLabel = new Label(mBundleUI.getString("file_order"));
+        Label filenameRegexLabel = new Label(mBundleUI.getString("filename_regex"));
+        Label filenameDatePatternLabel = new Label(mBundleUI.getString("filename_date_pattern"));
 
         mLinksCheckBox = new CheckBox(Dict.FOLLOW_LINKS.toString());
         mRecursiveCheckBox = new CheckBox(Dict.RECURSIVE.toString());
         mReplaceCheckBox = new CheckBox(Dict.REPLACE.toString());
+        mStreamingCheckBox = new CheckBox(mBundleUI.getString("streaming"));
+        mDateCacheCheckBox = new CheckBox(mBundleUI.getString("date_cache"));
+        mJournalCheckBox = new CheckBox(mBundleUI.getString("journal"));
+        mIncrementalCheckBox = new CheckBox(mBundleUI.getString("incremental"));
 
         mCaseBaseComboBox = new ComboBox<>();
         mDatePatternComboBox = new ComboBox<>();
@@ -143,13 +195,54 @@ public class ProfilePanel extends GridPane {
         mFilePatternComboBox = new ComboBox<>();
         mOperationComboBox = new ComboBox<>();
         mCaseExtComboBox = new ComboBox<>();
+        mTransferEngineComboBox = new ComboBox<>();
+        mFileOrderComboBox = new ComboBox<>();
+
+        mJobsSpinner = new Spinner<>(1, 64, 1);
+        mJobsSpinner.setEditable(true);
+        mJobsSpinner.setPrefWidth(80);
+        FxHelper.autoCommitSpinners(mJobsSpinner);
 
         mNameTextField = new TextField();
         mDescTextField = new TextField();
+        mFilenameRegexTextField = new TextField();
+        mFilenameDatePatternTextField = new TextField();
+        mFilenameRegexTextField.setPromptText(Profile.DEFAULT_FILENAME_REGEX);
+        mFilenameDatePatternTextField.setPromptText(Profile.DEFAULT_FILENAME_DATE_PATTERN);
 
         mSourceChooserPane = new FileChooserPane(Dict.OPEN.toString(), Dict.SOURCE.toString(), ObjectMode.DIRECTORY, SelectionMode.SINGLE);
         mDestChooserPane = new FileChooserPane(Dict.OPEN.toString(), Dict.DESTINATION.toString(), ObjectMode.DIRECTORY, SelectionMode.SINGLE);
 
+        mAdditionalSourcesListView = new ListView<>();
+        mAdditionalSourcesListView.setPrefHeight(80);
+        mAdditionalSourcesListView.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+
+        Button addSourceButton = new Button(Dict.ADD.toString());
+        Button removeSourceButton = new Button(Dict.REMOVE.toString());
+        addSourceButton.setMaxWidth(Double.MAX_VALUE);
+        removeSourceButton.setMaxWidth(Double.MAX_VALUE);
+        removeSourceButton.disableProperty().bind(mAdditionalSourcesListView.getSelectionModel().selectedItemProperty().isNull());
+
+        addSourceButton.setOnAction((event) -> {
+            DirectoryChooser directoryChooser = new DirectoryChooser();
+            directoryChooser.setTitle(Dict.SOURCE.toString());
+            File dir = directoryChooser.showDialog(getScene().getWindow());
+            if (dir != null && !mAdditionalSourcesListView.getItems().contains(dir)) {
+                mAdditionalSourcesListView.getItems().add(dir);
+            }
+        });
+
+        removeSourceButton.setOnAction((event) -> {
+            mAdditionalSourcesListView.getItems().removeAll(new ArrayList<>(mAdditionalSourcesListView.getSelectionModel().getSelectedItems()));
+        });
+
+        VBox sourceButtonBox = new VBox(8, addSourceButton, removeSourceButton);
+        GridPane additionalSourcesPane = new GridPane();
+        additionalSourcesPane.addRow(0, additionalSourcesLabel);
+        additionalSourcesPane.addRow(1, mAdditionalSourcesListView, sourceButtonBox);
+        additionalSourcesPane.setHgap(8);
+        GridPane.setHgrow(mAdditionalSourcesListView, Priority.ALWAYS);
+
         mFilePatternComboBox.setEditable(true);
         mDatePatternComboBox.setEditable(true);
         //mDatePatternLabel.setPrefWidth(300);
@@ -162,11 +255,14 @@ public class ProfilePanel extends GridPane {
         add(descLabel, col, ++row, REMAINING, 1);
         add(mDescTextField, col, ++row, REMAINING, 1);
         add(mSourceChooserPane, col, ++row, REMAINING, 1);
+        add(additionalSourcesPane, col, ++row, REMAINING, 1);
         add(mDestChooserPane, col, ++row, REMAINING, 1);
 
         GridPane patternPane = new GridPane();
         patternPane.addRow(0, filePatternLabel, dateSourceLabel, mDatePatternLabel);
         patternPane.addRow(1, mFilePatternComboBox, mDateSourceComboBox, mDatePatternComboBox);
+        patternPane.addRow(2, new Label(), filenameRegexLabel, filenameDatePatternLabel);
+        patternPane.addRow(3, new Label(), mFilenameRegexTextField, mFilenameDatePatternTextField);
         patternPane.setHgap(8);
         addRow(++row, patternPane);
 
@@ -192,9 +288,11 @@ public class ProfilePanel extends GridPane {
         mDatePatternComboBox.setMaxWidth(Double.MAX_VALUE);
         GridPane subPane = new GridPane();
         //subPane.setGridLinesVisible(true);
-        subPane.addRow(0, operationLabel, new Label(), new Label(), new Label(), caseBaseLabel, caseExtLabel);
-        subPane.addRow(1, mOperationComboBox, mLinksCheckBox, mRecursiveCheckBox, mReplaceCheckBox, mCaseBaseComboBox, mCaseExtComboBox);
+        subPane.addRow(0, operationLabel, new Label(), new Label(), new Label(), caseBaseLabel, caseExtLabel, jobsLabel, transferEngineLabel);
+        subPane.addRow(1, mOperationComboBox, mLinksCheckBox, mRecursiveCheckBox, mReplaceCheckBox, mCaseBaseComboBox, mCaseExtComboBox, mJobsSpinner, mTransferEngineComboBox);
+        subPane.addRow(2, new Label(), mIncrementalCheckBox, mStreamingCheckBox, mDateCacheCheckBox, mJournalCheckBox, new Label(), fileOrderLabel, mFileOrderComboBox);
         subPane.setHgap(8);
+        subPane.setVgap(8);
         add(subPane, col, ++row, REMAINING, 1);
 
         final Insets rowInsets = new Insets(0, 0, 8, 0);
@@ -202,6 +300,7 @@ public class ProfilePanel extends GridPane {
         GridPane.setMargin(mNameTextField, rowInsets);
         GridPane.setMargin(mDescTextField, rowInsets);
         GridPane.setMargin(mSourceChooserPane, rowInsets);
+        GridPane.setMargin(additionalSourcesPane, rowInsets);
         GridPane.setMargin(mDestChooserPane, rowInsets);
         GridPane.setMargin(patternPane, rowInsets);
 
@@ -223,9 +322,16 @@ public class ProfilePanel extends GridPane {
         mCaseExtComboBox.setItems(FXCollections.observableArrayList(Arrays.asList(NameCase.values())));
         mDateSourceComboBox.setItems(FXCollections.observableArrayList(Arrays.asList(DateSource.values())));
         mOperationComboBox.setItems(FXCollections.observableArrayList(Arrays.asList(Command.COPY, Command.MOVE)));
+        mTransferEngineComboBox.setItems(FXCollections.observableArrayList(Arrays.asList(TransferEngine.values())));
+        mFileOrderComboBox.setItems(FXCollections.observableArrayList(Arrays.asList(FileOrder.values())));
     }
 
     private void initListeners() {
+        mDateSourceComboBox.valueProperty().addListener((observable, oldValue, newValue) -> {
+            updateFilenameFields();
+        });
+
+        updateFilenameFields();
     }
 
     private void initValidation() {
@@ -240,6 +346,24 @@ public class ProfilePanel extends GridPane {
             return !StringUtils.isBlank((String) o) && previewDateFormat();
         };
 
+        Predicate filenameRegexPredicate = (Predicate) (Object o) -> {
+            try {
+                Pattern.compile(StringUtils.defaultIfBlank((String) o, Profile.DEFAULT_FILENAME_REGEX));
+                return true;
+            } catch (PatternSyntaxException e) {
+                return false;
+            }
+        };
+
+        Predicate filenameDatePatternPredicate = (Predicate) (Object o) -> {
+            try {
+                DateTimeFormatter.ofPattern(StringUtils.defaultIfBlank((String) o, Profile.DEFAULT_FILENAME_DATE_PATTERN));
+                return true;
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+        };
+
         ValidationSupport validationSupport = new ValidationSupport();
         validationSupport.registerValidator(mNameTextField, indicateRequired, Validator.createEmptyValidator(text_is_required));
         validationSupport.registerValidator(mNameTextField, indicateRequired, Validator.createPredicateValidator(namePredicate, text_is_required));
@@ -249,6 +373,8 @@ public class ProfilePanel extends GridPane {
         validationSupport.registerValidator(mFilePatternComboBox, indicateRequired, Validator.createEmptyValidator(text_is_required));
         validationSupport.registerValidator(mDatePatternComboBox, indicateRequired, Validator.createEmptyValidator(text_is_required));
         validationSupport.registerValidator(mDatePatternComboBox, indicateRequired, Validator.createPredicateValidator(datePredicate, text_is_required));
+        validationSupport.registerValidator(mFilenameRegexTextField, indicateRequired, Validator.createPredicateValidator(filenameRegexPredicate, Dict.Dialog.ERROR.toString()));
+        validationSupport.registerValidator(mFilenameDatePatternTextField, indicateRequired, Validator.createPredicateValidator(filenameDatePatternPredicate, Dict.Dialog.ERROR.toString()));
 
         validationSupport.validationResultProperty().addListener((ObservableValue<? extends ValidationResult> observable, ValidationResult oldValue, ValidationResult newValue) -> {
             if (mOkButton != null) {
@@ -286,4 +412,13 @@ public class ProfilePanel extends GridPane {
         return validFormat;
     }
 
+    /**
+     * The file name fields only apply to the file name date source.
+     */
+    private void updateFilenameFields() {
+        boolean disable = mDateSourceComboBox.getValue() != DateSource.FILENAME_PATTERN;
+        mFilenameRegexTextField.setDisable(disable);
+        mFilenameDatePatternTextField.setDisable(disable);
+    }
+
 }
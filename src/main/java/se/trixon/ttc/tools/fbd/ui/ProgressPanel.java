@@ -15,6 +15,7 @@
  */
 package se.trixon.ttc.tools.fbd.ui;
 
+import java.util.ResourceBundle;
 import javafx.application.Platform;
 import javafx.beans.value.ObservableValue;
 import javafx.geometry.Insets;
@@ -26,9 +27,13 @@ import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
 import se.trixon.almond.util.Dict;
+import se.trixon.almond.util.SystemHelper;
 import se.trixon.almond.util.fx.control.LogPanel;
 import se.trixon.ttc.Preferences;
 import se.trixon.ttc.tools.GeneralPreferences;
+import se.trixon.ttc.tools.fbd.OperationMetrics;
+import se.trixon.ttc.tools.ui.EventCoalescer;
+import se.trixon.ttc.tools.ui.LogView;
 
 /**
  *
@@ -36,21 +41,39 @@ import se.trixon.ttc.tools.GeneralPreferences;
  */
 public class ProgressPanel extends BorderPane {
 
+    private final ResourceBundle mBundleUI = SystemHelper.getBundle(FbdModule.class, "Bundle");
     private final Tab mErrTab = new Tab(Dict.Dialog.ERROR.toString());
+    private final EventCoalescer mEventCoalescer;
     private final GeneralPreferences mGeneralPreference = Preferences.getInstance().general();
-    private final LogPanel mLogErrPanel = new LogPanel();
-    private final LogPanel mLogOutPanel = new LogPanel();
+    private final LogView mLogErrPanel = new LogView();
+    private final LogView mLogOutPanel = new LogView();
+    private final LogPanel mMetricsPanel = new LogPanel();
+    private final Tab mMetricsTab = new Tab(mBundleUI.getString("metrics"));
     private final Tab mOutTab = new Tab(Dict.OUTPUT.toString());
     private final ProgressBar mProgressBar = new ProgressBar();
     private final TabPane mTabPane = new TabPane();
 
     public ProgressPanel() {
+        mEventCoalescer = new EventCoalescer(20,
+                lines -> mLogOutPanel.println(lines),
+                lines -> {
+                    mLogErrPanel.println(lines);
+                    if (!mTabPane.getTabs().contains(mErrTab)) {
+                        mTabPane.getTabs().add(1, mErrTab);
+                    }
+                },
+                progress -> mProgressBar.setProgress(progress)
+        );
+
         mLogOutPanel.setMonospaced();
         mLogErrPanel.setMonospaced();
+        mMetricsPanel.setMonospaced();
         mOutTab.setContent(mLogOutPanel);
         mErrTab.setContent(mLogErrPanel);
+        mMetricsTab.setContent(mMetricsPanel);
         mOutTab.setClosable(false);
         mErrTab.setClosable(false);
+        mMetricsTab.setClosable(false);
         mTabPane.getTabs().addAll(mOutTab);
 
         Insets insets = new Insets(8);
@@ -73,22 +96,39 @@ public class ProgressPanel extends BorderPane {
     }
 
     void clear() {
+        mEventCoalescer.clear();
         mLogOutPanel.clear();
         mLogErrPanel.clear();
+        mMetricsPanel.clear();
+        Platform.runLater(() -> {
+            mTabPane.getTabs().removeAll(mErrTab, mMetricsTab);
+        });
     }
 
     void err(String message) {
-        mLogErrPanel.println(message);
+        mLogErrPanel.spill(message);
+        mEventCoalescer.err(message);
     }
 
     void out(String message) {
-        mLogOutPanel.println(message);
+        //Spill before coalescing, the coalescer may drop lines
+        mLogOutPanel.spill(message);
+        mEventCoalescer.out(message);
     }
 
-    void setProgress(double p) {
+    void setMetrics(OperationMetrics metrics) {
+        String text = metrics.toString();
         Platform.runLater(() -> {
-            mProgressBar.setProgress(p);
+            mMetricsPanel.clear();
+            mMetricsPanel.println(text);
+            if (!mTabPane.getTabs().contains(mMetricsTab)) {
+                mTabPane.getTabs().add(mMetricsTab);
+            }
         });
     }
 
+    void setProgress(double p) {
+        mEventCoalescer.setProgress(p);
+    }
+
 }
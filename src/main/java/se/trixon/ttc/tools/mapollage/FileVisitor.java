@@ -21,39 +21,43 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.PathMatcher;
-import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Properties;
-import java.util.concurrent.TimeUnit;
 import org.apache.commons.io.IOCase;
 import org.apache.commons.lang3.StringUtils;
+import se.trixon.ttc.tools.DirectoryScanner;
+import se.trixon.ttc.tools.OperationContext;
 import se.trixon.ttc.tools.mapollage.profile.ProfileDescription.DescriptionMode;
 
 /**
  *
  * @author Patrik Karlström
  */
-public class FileVisitor extends SimpleFileVisitor<Path> {
+public class FileVisitor implements DirectoryScanner.Visitor {
 
+    private final OperationContext mContext;
     private final Properties mDefaultDescProperties = new Properties();
     private final HashMap<String, Properties> mDirToDesc;
     private final String[] mExcludePatterns;
     private final String mExternalFileValue;
-    private List<File> mFiles = new ArrayList<>();
+    private Collection<File> mFiles = new ArrayList<>();
     private boolean mInterrupted;
     private final Operation mOperation;
     private final OperationListener mOperationListener;
     private final PathMatcher mPathMatcher;
     private final boolean mUseExternalDescription;
 
-    public FileVisitor(PathMatcher pathMatcher, List<File> paths, File startDir, Operation operation) {
+    public FileVisitor(PathMatcher pathMatcher, Collection<File> paths, File startDir, Operation operation) {
         mOperation = operation;
         mOperationListener = operation.getListener();
+        mContext = operation.getContext();
         mFiles = paths;
         mPathMatcher = pathMatcher;
         mExcludePatterns = StringUtils.split(operation.getExcludePattern(), "::");
@@ -79,7 +83,12 @@ public class FileVisitor extends SimpleFileVisitor<Path> {
     }
 
     @Override
-    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+    public FileVisitResult visitDirectory(Path dir, BasicFileAttributes attrs, List<DirectoryScanner.Entry> files) {
+        if (mContext.isCancelled()) {
+            mInterrupted = true;
+            return FileVisitResult.TERMINATE;
+        }
+
         if (mExcludePatterns != null) {
             for (String excludePattern : mExcludePatterns) {
                 if (IOCase.SYSTEM.isCaseSensitive()) {
@@ -94,12 +103,10 @@ public class FileVisitor extends SimpleFileVisitor<Path> {
             }
         }
 
-        String[] filePaths = dir.toFile().list();
-
         mOperationListener.onOperationLog(dir.toString());
         mOperationListener.onOperationProgress(dir.toString());
 
-        if (filePaths != null && filePaths.length > 0) {
+        if (!files.isEmpty()) {
             if (mUseExternalDescription) {
                 Properties p = new Properties(mDefaultDescProperties);
 
@@ -115,15 +122,14 @@ public class FileVisitor extends SimpleFileVisitor<Path> {
                 mDirToDesc.put(dir.toFile().getAbsolutePath(), p);
             }
 
-            for (String fileName : filePaths) {
-                try {
-                    TimeUnit.NANOSECONDS.sleep(1);
-                } catch (InterruptedException ex) {
+            for (DirectoryScanner.Entry entry : files) {
+                if (mContext.isCancelled()) {
                     mInterrupted = true;
                     return FileVisitResult.TERMINATE;
                 }
-                File file = new File(dir.toFile(), fileName);
-                if (file.isFile() && mPathMatcher.matches(file.toPath().getFileName())) {
+
+                File file = entry.getPath().toFile();
+                if (isFile(entry) && mPathMatcher.matches(entry.getPath().getFileName())) {
                     boolean exclude = false;
                     if (mExcludePatterns != null) {
                         for (String excludePattern : mExcludePatterns) {
@@ -145,9 +151,13 @@ public class FileVisitor extends SimpleFileVisitor<Path> {
     }
 
     @Override
-    public FileVisitResult visitFileFailed(Path file, IOException exception) {
+    public void visitFailed(Path file, IOException exception) {
         mOperation.logError(String.format("E000 %s", file.toString()));
+    }
 
-        return FileVisitResult.CONTINUE;
+    private boolean isFile(DirectoryScanner.Entry entry) {
+        BasicFileAttributes attributes = entry.getAttributes();
+
+        return attributes.isSymbolicLink() ? Files.isRegularFile(entry.getPath()) : attributes.isRegularFile();
     }
 }
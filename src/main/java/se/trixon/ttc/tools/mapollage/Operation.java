@@ -44,7 +44,6 @@ import java.awt.geom.Point2D;
 import java.io.File;
 import java.io.IOException;
 import java.io.StringWriter;
-import java.nio.file.FileVisitOption;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.PathMatcher;
@@ -53,7 +52,6 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
-import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -72,6 +70,9 @@ import se.trixon.almond.util.Scaler;
 import se.trixon.almond.util.SystemHelper;
 import se.trixon.almond.util.ext.GrahamScan;
 import se.trixon.ttc.Preferences;
+import se.trixon.ttc.tools.DirectoryScanner;
+import se.trixon.ttc.tools.ExternalFileSorter;
+import se.trixon.ttc.tools.OperationContext;
 import se.trixon.ttc.tools.mapollage.profile.Profile;
 import se.trixon.ttc.tools.mapollage.profile.ProfileDescription;
 import se.trixon.ttc.tools.mapollage.profile.ProfileDescription.DescriptionSegment;
@@ -91,12 +92,13 @@ public class Operation implements Runnable {
 
     private final BalloonStyle mBalloonStyle;
     private final ResourceBundle mBundle;
+    private final OperationContext mContext;
     private final DateFormat mDateFormatDate = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.MEDIUM);
     private final File mDestinationFile;
     private final HashMap<String, Properties> mDirToDesc = new HashMap<>();
     private final Document mDocument;
     private final HashMap<File, File> mFileThumbMap = new HashMap<>();
-    private final List<File> mFiles = new ArrayList<>();
+    private final ExternalFileSorter mFiles = new ExternalFileSorter(Preferences.getInstance().general().getSortMemory());
     private final Pattern mFolderByRegexPattern;
     private final HashMap<Folder, ArrayList<Coordinate>> mFolderPolygonInputs = new HashMap<>();
     private final Map<String, Folder> mFolders = new HashMap<>();
@@ -128,8 +130,13 @@ public class Operation implements Runnable {
     private final SimpleDateFormat mTimeStampDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssX");
 
     public Operation(OperationListener operationListener, Profile profile) {
+        this(operationListener, profile, new OperationContext());
+    }
+
+    public Operation(OperationListener operationListener, Profile profile, OperationContext context) {
         mListener = operationListener;
         mProfile = profile;
+        mContext = context;
         mProfileSource = mProfile.getSource();
         mProfileFolder = mProfile.getFolder();
         mProfilePath = mProfile.getPath();
@@ -195,11 +202,11 @@ public class Operation implements Runnable {
 
             mListener.onOperationLog(String.format(mBundle.getString("found_count"), mFiles.size()));
             mListener.onOperationLog("");
+            mContext.setTotal(mFiles.size());
 
-            int progress = 0;
             for (File file : mFiles) {
                 mListener.onOperationProgress(file.getAbsolutePath());
-                mListener.onOperationProgress(++progress, mFiles.size());
+                mListener.onOperationProgress(mContext.incrementProgress(), mContext.getTotal());
 
                 try {
                     addPhoto(file);
@@ -209,7 +216,7 @@ public class Operation implements Runnable {
                     logError(String.format("E000 %s", file.getAbsolutePath()));
                 }
 
-                if (Thread.interrupted()) {
+                if (mContext.isCancelled()) {
                     mInterrupted = true;
                     break;
                 }
@@ -235,6 +242,12 @@ public class Operation implements Runnable {
         if (mNumOfErrors > 0) {
             logError(mBundle.getString("error_description"));
         }
+
+        mFiles.close();
+    }
+
+    OperationContext getContext() {
+        return mContext;
     }
 
     HashMap<String, Properties> getDirToDesc() {
@@ -396,7 +409,7 @@ public class Operation implements Runnable {
                     mPhotoInfo.createThumbnail(thumbFile);
                 } else {
                     mListener.onOperationLog(String.format(mBundle.getString("insufficient_privileges"), mDestinationFile.getAbsolutePath()));
-                    Thread.currentThread().interrupt();
+                    mContext.cancel();
                     return;
                 }
             }
@@ -518,22 +531,12 @@ public class Operation implements Runnable {
         mListener.onOperationLog(Dict.GENERATING_FILELIST.toString());
         PathMatcher pathMatcher = mProfileSource.getPathMatcher();
 
-        EnumSet<FileVisitOption> fileVisitOptions;
-        if (mProfileSource.isFollowLinks()) {
-            fileVisitOptions = EnumSet.of(FileVisitOption.FOLLOW_LINKS);
-        } else {
-            fileVisitOptions = EnumSet.noneOf(FileVisitOption.class);
-        }
-
         File file = mProfileSource.getDir();
         if (file.isDirectory()) {
             FileVisitor fileVisitor = new FileVisitor(pathMatcher, mFiles, file, this);
+            DirectoryScanner directoryScanner = new DirectoryScanner(Preferences.getInstance().general().getScanParallelism(), mProfileSource.isFollowLinks(), mProfileSource.isRecursive());
             try {
-                if (mProfileSource.isRecursive()) {
-                    Files.walkFileTree(file.toPath(), fileVisitOptions, Integer.MAX_VALUE, fileVisitor);
-                } else {
-                    Files.walkFileTree(file.toPath(), fileVisitOptions, 1, fileVisitor);
-                }
+                directoryScanner.scan(file.toPath(), fileVisitor);
 
                 if (fileVisitor.isInterrupted()) {
                     return false;
@@ -548,7 +551,7 @@ public class Operation implements Runnable {
         if (mFiles.isEmpty()) {
             mListener.onOperationFinished(Dict.FILELIST_EMPTY.toString(), 0);
         } else {
-            Collections.sort(mFiles);
+            mFiles.sort();
         }
 
         return true;
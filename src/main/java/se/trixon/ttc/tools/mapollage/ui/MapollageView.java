@@ -64,6 +64,7 @@ import static se.trixon.ttc.MainApp.ICON_SIZE_PROFILE;
 import static se.trixon.ttc.MainApp.ICON_SIZE_TOOLBAR;
 import se.trixon.ttc.Preferences;
 import se.trixon.ttc.RunState;
+import se.trixon.ttc.tools.OperationContext;
 import se.trixon.ttc.tools.mapollage.MapollagePreferences;
 import se.trixon.ttc.tools.mapollage.Operation;
 import se.trixon.ttc.tools.mapollage.OperationListener;
@@ -87,6 +88,7 @@ public class MapollageView extends BorderPane {
     private ListView<Profile> mListView;
     private final MapollageModule mModule;
     private Button mOpenButton;
+    private OperationContext mOperationContext;
     private OperationListener mOperationListener;
     private Thread mOperationThread;
     private final MapollagePreferences mPreferences = Preferences.getInstance().mapollage();
@@ -105,7 +107,7 @@ public class MapollageView extends BorderPane {
     }
 
     void doCancel() {
-        mOperationThread.interrupt();
+        mOperationContext.cancel();
     }
 
     void doNavHome() {
@@ -334,7 +336,8 @@ public class MapollageView extends BorderPane {
                 mIndicator.setProfile(profile);
                 mLastRunProfile = profile;
 
-                Operation operation = new Operation(mOperationListener, profile);
+                mOperationContext = new OperationContext();
+                Operation operation = new Operation(mOperationListener, profile, mOperationContext);
                 mOperationThread = new Thread(operation);
                 mOperationThread.start();
             } else {
@@ -16,7 +16,6 @@
 package se.trixon.ttc.tools.mapollage.ui;
 
 import java.util.ResourceBundle;
-import javafx.application.Platform;
 import javafx.beans.value.ObservableValue;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
@@ -31,8 +30,9 @@ import javafx.scene.layout.Priority;
 import se.trixon.almond.util.Dict;
 import se.trixon.almond.util.SystemHelper;
 import se.trixon.almond.util.fx.FxHelper;
-import se.trixon.almond.util.fx.control.LogPanel;
 import se.trixon.ttc.tools.GeneralPreferences;
+import se.trixon.ttc.tools.ui.EventCoalescer;
+import se.trixon.ttc.tools.ui.LogView;
 import se.trixon.ttc.Preferences;
 
 /**
@@ -43,15 +43,22 @@ public class ProgressPanel extends BorderPane {
 
     private final ResourceBundle mBundle = SystemHelper.getBundle(ProgressPanel.class, "Bundle");
     private final Tab mErrTab = new Tab(Dict.Dialog.ERROR.toString());
+    private final EventCoalescer mEventCoalescer;
     private final GeneralPreferences mGeneralPreference = Preferences.getInstance().general();
-    private final LogPanel mLogErrPanel = new LogPanel();
-    private final LogPanel mLogOutPanel = new LogPanel();
+    private final LogView mLogErrPanel = new LogView();
+    private final LogView mLogOutPanel = new LogView();
     private final Button mOpenButton = new Button();
     private final Tab mOutTab = new Tab(Dict.OUTPUT.toString());
     private final ProgressBar mProgressBar = new ProgressBar();
     private final TabPane mTabPane = new TabPane();
 
     public ProgressPanel() {
+        mEventCoalescer = new EventCoalescer(20,
+                lines -> mLogOutPanel.println(lines),
+                lines -> mLogErrPanel.println(lines),
+                progress -> mProgressBar.setProgress(progress)
+        );
+
         mLogOutPanel.setMonospaced();
         mLogErrPanel.setMonospaced();
         mOutTab.setContent(mLogOutPanel);
@@ -87,22 +94,24 @@ public class ProgressPanel extends BorderPane {
     }
 
     void clear() {
+        mEventCoalescer.clear();
         mLogOutPanel.clear();
         mLogErrPanel.clear();
     }
 
     void err(String message) {
-        mLogErrPanel.println(message);
+        mLogErrPanel.spill(message);
+        mEventCoalescer.err(message);
     }
 
     void out(String message) {
-        mLogOutPanel.println(message);
+        //Spill before coalescing, the coalescer may drop lines
+        mLogOutPanel.spill(message);
+        mEventCoalescer.out(message);
     }
 
     void setProgress(double p) {
-        Platform.runLater(() -> {
-            mProgressBar.setProgress(p);
-        });
+        mEventCoalescer.setProgress(p);
     }
 
 }
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.ttc.tools.ui;
+
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import javafx.application.Platform;
+import se.trixon.almond.util.SystemHelper;
+
+/**
+ * Collects log lines and progress from an operation thread and delivers
+ * them to the JavaFX thread in batches.
+ *
+ * At most one update is posted to the FX thread per interval, carrying all
+ * lines queued since the previous one and the latest progress value. When
+ * output is produced faster than it can be shown, the oldest output lines
+ * are dropped and replaced by a count. Error lines are never dropped.
+ *
+ * @author Patrik Karlström
+ */
+public class EventCoalescer {
+
+    private static final int MAX_LINES_PER_UPDATE = 5000;
+    private static final int MAX_PENDING_LINES = 50000;
+    private static final ScheduledExecutorService sScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "EventCoalescer");
+        thread.setDaemon(true);
+
+        return thread;
+    });
+
+    private final ResourceBundle mBundle = SystemHelper.getBundle(EventCoalescer.class, "Bundle");
+    private final AtomicInteger mDroppedLines = new AtomicInteger();
+    private final Consumer<String> mErrConsumer;
+    private final ConcurrentLinkedQueue<String> mErrQueue = new ConcurrentLinkedQueue<>();
+    private final long mIntervalNanos;
+    private volatile long mLastUpdateNanos;
+    private final Consumer<String> mOutConsumer;
+    private final ConcurrentLinkedQueue<String> mOutQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger mOutQueueSize = new AtomicInteger();
+    private final AtomicLong mProgress = new AtomicLong(Double.doubleToLongBits(Double.NaN));
+    private final DoubleConsumer mProgressConsumer;
+    private final AtomicBoolean mScheduled = new AtomicBoolean();
+
+    /**
+     * @param updatesPerSecond the maximum number of updates per second
+     * @param outConsumer receives batches of output lines on the FX thread
+     * @param errConsumer receives batches of error lines on the FX thread
+     * @param progressConsumer receives the latest progress on the FX thread
+     */
+    public EventCoalescer(int updatesPerSecond, Consumer<String> outConsumer, Consumer<String> errConsumer, DoubleConsumer progressConsumer) {
+        mIntervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, updatesPerSecond);
+        mOutConsumer = outConsumer;
+        mErrConsumer = errConsumer;
+        mProgressConsumer = progressConsumer;
+    }
+
+    /**
+     * Discards everything not yet delivered.
+     */
+    public void clear() {
+        mOutQueue.clear();
+        mOutQueueSize.set(0);
+        mErrQueue.clear();
+        mDroppedLines.set(0);
+        mProgress.set(Double.doubleToLongBits(Double.NaN));
+    }
+
+    public void err(String message) {
+        mErrQueue.offer(message);
+        schedule();
+    }
+
+    public void out(String message) {
+        mOutQueue.offer(message);
+
+        if (mOutQueueSize.incrementAndGet() > MAX_PENDING_LINES && mOutQueue.poll() != null) {
+            mOutQueueSize.decrementAndGet();
+            mDroppedLines.incrementAndGet();
+        }
+
+        schedule();
+    }
+
+    public void setProgress(double progress) {
+        mProgress.set(Double.doubleToLongBits(progress));
+        schedule();
+    }
+
+    private String drain(ConcurrentLinkedQueue<String> queue, int maxLines, AtomicInteger size) {
+        StringBuilder builder = new StringBuilder();
+        int count = 0;
+
+        for (String line; count < maxLines && (line = queue.poll()) != null; count++) {
+            if (count > 0) {
+                builder.append("\n");
+            }
+            builder.append(line);
+        }
+
+        if (size != null) {
+            size.addAndGet(-count);
+        }
+
+        return count == 0 ? null : builder.toString();
+    }
+
+    private void schedule() {
+        if (mScheduled.compareAndSet(false, true)) {
+            long delayNanos = Math.max(0, mLastUpdateNanos + mIntervalNanos - System.nanoTime());
+            sScheduler.schedule(() -> Platform.runLater(this::update), delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void update() {
+        mLastUpdateNanos = System.nanoTime();
+        mScheduled.set(false);
+
+        double progress = Double.longBitsToDouble(mProgress.getAndSet(Double.doubleToLongBits(Double.NaN)));
+        if (!Double.isNaN(progress)) {
+            mProgressConsumer.accept(progress);
+        }
+
+        String errLines = drain(mErrQueue, Integer.MAX_VALUE, null);
+        if (errLines != null) {
+            mErrConsumer.accept(errLines);
+        }
+
+        int droppedLines = mDroppedLines.getAndSet(0);
+        if (droppedLines > 0) {
+            mOutConsumer.accept(String.format(mBundle.getString("dropped_lines"), droppedLines));
+        }
+
+        String outLines = drain(mOutQueue, MAX_LINES_PER_UPDATE, mOutQueueSize);
+        if (outLines != null) {
+            mOutConsumer.accept(outLines);
+        }
+
+        if (!mOutQueue.isEmpty()) {
+            schedule();
+        }
+    }
+}
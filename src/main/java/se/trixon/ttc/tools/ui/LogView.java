@@ -0,0 +1,293 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.ttc.tools.ui;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.ResourceBundle;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javafx.beans.binding.Bindings;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.collections.ObservableListBase;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.MenuItem;
+import javafx.scene.layout.Region;
+import javafx.stage.FileChooser;
+import org.apache.commons.io.FileUtils;
+import se.trixon.almond.util.Dict;
+import se.trixon.almond.util.SystemHelper;
+import se.trixon.almond.util.fx.dialogs.SimpleDialog;
+import se.trixon.ttc.tools.LogSink;
+
+/**
+ * A log view that keeps only the most recent lines in memory.
+ *
+ * Lines are held in a fixed-capacity ring buffer shown by a virtualized
+ * ListView, so only the visible rows are laid out. Lines passed to
+ * {@link #spill(String)} are written to a temporary file that can be saved
+ * from the context menu. Callers spill before handing lines to anything
+ * that may drop them, so the saved log is complete even when the view is
+ * not.
+ *
+ * @author Patrik Karlström
+ */
+public class LogView extends ListView<String> {
+
+    private static final int DEFAULT_CAPACITY = 10000;
+    private static final Logger LOGGER = Logger.getLogger(LogView.class.getName());
+
+    private final ResourceBundle mBundle = SystemHelper.getBundle(LogView.class, "Bundle");
+    private final RingList mLines;
+    private File mSpillFile;
+    private final Object mSpillLock = new Object();
+    private LogSink mSpillSink;
+    private final BooleanProperty mWrapTextProperty = new SimpleBooleanProperty(false);
+
+    public LogView() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public LogView(int capacity) {
+        mLines = new RingList(capacity);
+        setItems(mLines);
+
+        setCellFactory(listView -> {
+            ListCell<String> cell = new ListCell<String>() {
+                @Override
+                protected void updateItem(String item, boolean empty) {
+                    super.updateItem(item, empty);
+                    setText(empty ? null : item);
+                }
+            };
+
+            cell.wrapTextProperty().bind(mWrapTextProperty);
+            cell.prefWidthProperty().bind(Bindings.when(mWrapTextProperty).then(0d).otherwise(Region.USE_COMPUTED_SIZE));
+
+            return cell;
+        });
+
+        MenuItem saveMenuItem = new MenuItem(mBundle.getString("save_full_log"));
+        saveMenuItem.setOnAction(event -> requestSaveFullLog());
+        saveMenuItem.disableProperty().bind(Bindings.isEmpty(mLines));
+        setContextMenu(new ContextMenu(saveMenuItem));
+    }
+
+    /**
+     * Removes all lines and deletes the spill file. Must be called on the FX
+     * thread.
+     */
+    public void clear() {
+        mLines.clearLines();
+
+        LogSink spillSink;
+        File spillFile;
+        synchronized (mSpillLock) {
+            spillSink = mSpillSink;
+            spillFile = mSpillFile;
+            mSpillSink = null;
+            mSpillFile = null;
+        }
+
+        if (spillSink != null || spillFile != null) {
+            //Closing waits for the sink to write what is queued
+            Thread thread = new Thread(() -> {
+                if (spillSink != null) {
+                    spillSink.close();
+                }
+                FileUtils.deleteQuietly(spillFile);
+            }, "LogView");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Appends one or more newline separated lines to the view. Must be called
+     * on the FX thread.
+     *
+     * @param message
+     */
+    public void println(String message) {
+        mLines.addLines(Arrays.asList(message.split("\n", -1)));
+        scrollTo(mLines.size() - 1);
+    }
+
+    /**
+     * Copies every line printed since the last clear to file. Waits for the
+     * spill file to be written out, which may take a while after a busy run,
+     * so it should not be called on the FX thread.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void saveFullLog(File file) throws IOException {
+        synchronized (mSpillLock) {
+            if (mSpillFile == null) {
+                throw new IOException(mBundle.getString("spill_unavailable"));
+            }
+
+            closeSpill();
+
+            try {
+                FileUtils.copyFile(mSpillFile, file);
+            } finally {
+                openSpill(true);
+            }
+        }
+    }
+
+    public void setMonospaced() {
+        setStyle("-fx-font-family: monospace;");
+    }
+
+    public void setWrapText(boolean wrapText) {
+        mWrapTextProperty.set(wrapText);
+    }
+
+    /**
+     * Writes one or more newline separated lines to the spill file. May be
+     * called from any thread.
+     *
+     * @param message
+     */
+    public void spill(String message) {
+        synchronized (mSpillLock) {
+            if (mSpillSink == null) {
+                openSpill(false);
+            }
+
+            if (mSpillSink != null) {
+                mSpillSink.println(message);
+            }
+        }
+    }
+
+    private void closeSpill() {
+        if (mSpillSink != null) {
+            mSpillSink.close();
+            mSpillSink = null;
+        }
+    }
+
+    private void openSpill(boolean append) {
+        try {
+            if (mSpillFile == null) {
+                mSpillFile = File.createTempFile("ttc-", ".log");
+                mSpillFile.deleteOnExit();
+            }
+
+            mSpillSink = new LogSink(new FileOutputStream(mSpillFile, append));
+        } catch (IOException ex) {
+            LOGGER.log(Level.SEVERE, null, ex);
+        }
+    }
+
+    private void requestSaveFullLog() {
+        FileChooser.ExtensionFilter filter = new FileChooser.ExtensionFilter(mBundle.getString("log_files"), "*.log");
+        SimpleDialog.clearFilters();
+        SimpleDialog.addFilter(new FileChooser.ExtensionFilter(Dict.ALL_FILES.toString(), "*"));
+        SimpleDialog.addFilter(filter);
+        SimpleDialog.setFilter(filter);
+        SimpleDialog.setOwner(getScene() == null ? null : getScene().getWindow());
+        SimpleDialog.setTitle(mBundle.getString("save_full_log"));
+        SimpleDialog.setSelectedFile(new File(""));
+
+        if (SimpleDialog.saveFile(new String[]{"log"})) {
+            File file = SimpleDialog.getPath();
+            Thread thread = new Thread(() -> {
+                try {
+                    saveFullLog(file);
+                } catch (IOException ex) {
+                    LOGGER.log(Level.SEVERE, null, ex);
+                }
+            }, "LogView");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private static class RingList extends ObservableListBase<String> {
+
+        private final String[] mElements;
+        private int mHead;
+        private int mSize;
+
+        RingList(int capacity) {
+            mElements = new String[capacity];
+        }
+
+        @Override
+        public String get(int index) {
+            if (index < 0 || index >= mSize) {
+                throw new IndexOutOfBoundsException(String.valueOf(index));
+            }
+
+            return mElements[(mHead + index) % mElements.length];
+        }
+
+        @Override
+        public int size() {
+            return mSize;
+        }
+
+        void addLines(List<String> lines) {
+            int capacity = mElements.length;
+            if (lines.size() > capacity) {
+                lines = lines.subList(lines.size() - capacity, lines.size());
+            }
+
+            beginChange();
+
+            int evicted = Math.min(mSize, mSize + lines.size() - capacity);
+            if (evicted > 0) {
+                nextRemove(0, new ArrayList<>(subList(0, evicted)));
+                for (int i = 0; i < evicted; i++) {
+                    mElements[(mHead + i) % capacity] = null;
+                }
+                mHead = (mHead + evicted) % capacity;
+                mSize -= evicted;
+            }
+
+            int from = mSize;
+            for (String line : lines) {
+                mElements[(mHead + mSize) % capacity] = line;
+                mSize++;
+            }
+            nextAdd(from, mSize);
+
+            endChange();
+        }
+
+        void clearLines() {
+            if (mSize > 0) {
+                beginChange();
+                nextRemove(0, new ArrayList<>(this));
+                Arrays.fill(mElements, null);
+                mHead = 0;
+                mSize = 0;
+                endChange();
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.ttc.tools;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Patrik Karlström
+ */
+public class ExternalFileSorterTest {
+
+    private static int countRunFiles() {
+        String[] names = new File(System.getProperty("java.io.tmpdir")).list((dir, name) -> name.startsWith("ttc-sort-"));
+
+        return names == null ? 0 : names.length;
+    }
+
+    /**
+     * A sorter that fails to read a run after the given number of reads.
+     */
+    private static ExternalFileSorter createFailingSorter(long memoryBudget, int reads) {
+        return new ExternalFileSorter(memoryBudget) {
+            private int mReads;
+
+            @Override
+            protected File readFile(DataInputStream inputStream) throws IOException {
+                if (++mReads > reads) {
+                    throw new IOException("read failed");
+                }
+
+                return super.readFile(inputStream);
+            }
+        };
+    }
+
+    private static List<File> createFiles(int count) {
+        Random random = new Random(count);
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            files.add(new File(String.format("/dir%d/sub%d/file%d.jpg", random.nextInt(20), random.nextInt(5), random.nextInt(1000))));
+        }
+
+        return files;
+    }
+
+    @Test(expected = IOException.class)
+    public void testFailedMergePass() throws IOException {
+        try (ExternalFileSorter sorter = createFailingSorter(1, 50)) {
+            sorter.addAll(createFiles(100));
+            sorter.sort();
+        }
+    }
+
+    @Test
+    public void testFailedReadIsReported() throws IOException {
+        try (ExternalFileSorter sorter = createFailingSorter(256 * 1024, 2500)) {
+            sorter.addAll(createFiles(5000));
+            sorter.sort();
+            assertTrue(sorter.isSpilled());
+
+            Iterator<File> iterator = sorter.iterator();
+            while (iterator.hasNext()) {
+                iterator.next();
+            }
+        } catch (UncheckedIOException ex) {
+            assertEquals("read failed", ex.getCause().getMessage());
+            return;
+        }
+
+        throw new AssertionError("The failed read was not reported");
+    }
+
+    @Test
+    public void testInMemory() throws IOException {
+        List<File> files = createFiles(1000);
+        try (ExternalFileSorter sorter = new ExternalFileSorter(0)) {
+            sorter.addAll(files);
+            sorter.sort();
+
+            assertFalse(sorter.isSpilled());
+            assertSorted(files, sorter);
+        }
+    }
+
+    @Test
+    public void testMergeOfRuns() throws IOException {
+        List<File> files = createFiles(5000);
+        try (ExternalFileSorter sorter = new ExternalFileSorter(256 * 1024)) {
+            sorter.addAll(files);
+            sorter.sort();
+
+            assertTrue(sorter.isSpilled());
+            assertSorted(files, sorter);
+        }
+    }
+
+    @Test
+    public void testMultiPassMerge() throws IOException {
+        List<File> files = createFiles(300);
+        int runFileCount = countRunFiles();
+
+        //Every file in a run of its own
+        ExternalFileSorter sorter = new ExternalFileSorter(1);
+        sorter.addAll(files);
+        sorter.sort();
+
+        assertTrue(sorter.isSpilled());
+        assertSorted(files, sorter);
+
+        sorter.close();
+        assertEquals(runFileCount, countRunFiles());
+    }
+
+    private void assertSorted(List<File> files, ExternalFileSorter sorter) {
+        List<File> expected = new ArrayList<>(files);
+        Collections.sort(expected);
+
+        List<File> actual = new ArrayList<>();
+        sorter.forEach(actual::add);
+
+        assertEquals(files.size(), sorter.size());
+        assertEquals(expected, actual);
+    }
+}
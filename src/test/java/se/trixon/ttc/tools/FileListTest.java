@@ -0,0 +1,161 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.ttc.tools;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Patrik Karlström
+ */
+public class FileListTest {
+
+    private static List<File> files(String... paths) {
+        List<File> files = new ArrayList<>();
+        for (String path : paths) {
+            files.add(new File(path));
+        }
+
+        return files;
+    }
+
+    @Test
+    public void testAddAfterSort() {
+        FileList fileList = new FileList();
+        fileList.addAll(files("/b/2", "/a/1"));
+        fileList.sort(null);
+        fileList.add(new File("/0"));
+
+        assertEquals(files("/a/1", "/b/2", "/0"), fileList);
+    }
+
+    @Test
+    public void testClear() {
+        FileList fileList = new FileList();
+        fileList.addAll(files("/b/2", "/a/1"));
+        fileList.sort(null);
+        fileList.clear();
+        fileList.addAll(files("/c/3"));
+
+        assertEquals(files("/c/3"), fileList);
+    }
+
+    @Test
+    public void testGet() {
+        List<File> files = files("/root.jpg", "relative.jpg", "dir/file.jpg", "/a/b/c/d.jpg", "/a/b/e.jpg", "/a/b/c/f.jpg");
+        FileList fileList = new FileList();
+        fileList.addAll(files);
+
+        assertEquals(files.size(), fileList.size());
+        for (int i = 0; i < files.size(); i++) {
+            assertEquals(files.get(i).getPath(), fileList.get(i).getPath());
+        }
+    }
+
+    @Test
+    public void testMemoryUsageGrows() {
+        FileList fileList = new FileList();
+        long empty = fileList.getMemoryUsage();
+        for (int i = 0; i < 5000; i++) {
+            fileList.add(new File("/dir" + i % 10, "file" + i + ".jpg"));
+        }
+
+        assertTrue(fileList.getMemoryUsage() > empty);
+    }
+
+    @Test
+    public void testSortComparesPathsLikeFile() {
+        //Separators, shared prefixes and names that are prefixes of each other
+        List<File> files = files(
+                "/a/b",
+                "/a-b/c",
+                "/a/b/c",
+                "/a/bc",
+                "/a/b-c",
+                "/ab",
+                "/a",
+                "/a/b.jpg",
+                "/a/B.jpg",
+                "/a.b/c",
+                "/a/b/c/d",
+                "/a/b/c/",
+                "rel/a",
+                "rel"
+        );
+        assertSorted(files);
+    }
+
+    @Test
+    public void testSortIndexesIsStable() {
+        FileList fileList = new FileList();
+        fileList.addAll(files("/d/4", "/c/3", "/b/2", "/a/1"));
+        int[] keys = {1, 0, 1, 0};
+
+        fileList.sortIndexes((index1, index2) -> Integer.compare(keys[index1], keys[index2]));
+        assertEquals(files("/c/3", "/a/1", "/d/4", "/b/2"), fileList);
+
+        //Indexes refer to the current order
+        fileList.sortIndexes((index1, index2) -> Integer.compare(index2, index1));
+        assertEquals(files("/b/2", "/d/4", "/a/1", "/c/3"), fileList);
+    }
+
+    @Test
+    public void testSortRandomTree() {
+        Random random = new Random(42);
+        String[] parts = {"a", "b", "ab", "a-b", "a.b", "B", "2019", "2019-05", "x y"};
+        List<File> files = new ArrayList<>();
+
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder builder = new StringBuilder();
+            int depth = 1 + random.nextInt(4);
+            for (int j = 0; j < depth; j++) {
+                builder.append('/').append(parts[random.nextInt(parts.length)]);
+            }
+            builder.append(random.nextInt(100)).append(".jpg");
+            files.add(new File(builder.toString()));
+        }
+
+        assertSorted(files);
+    }
+
+    @Test
+    public void testSortWithComparator() {
+        FileList fileList = new FileList();
+        fileList.addAll(files("/a/ccc", "/b/a", "/c/bb"));
+        fileList.sort(Comparator.comparing(File::getName));
+
+        assertEquals(files("/b/a", "/c/bb", "/a/ccc"), fileList);
+    }
+
+    private void assertSorted(List<File> files) {
+        FileList fileList = new FileList();
+        fileList.addAll(files);
+        fileList.sort(null);
+
+        List<File> expected = new ArrayList<>(files);
+        Collections.sort(expected);
+
+        assertEquals(expected, fileList);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.ttc.tools.fbd;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author Patrik Karlström
+ */
+public class DateCacheTest {
+
+    private File mCacheFile;
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws IOException {
+        mCacheFile = new File(mTemporaryFolder.getRoot(), "dates.cache");
+    }
+
+    @Test
+    public void testChangedFileMisses() throws IOException {
+        File file = new File(mTemporaryFolder.getRoot(), "a.jpg");
+        DateCache dateCache = DateCache.open(mCacheFile);
+        dateCache.put(file, 100, 1000, DateSource.EXIF_ORIGINAL, 42);
+        dateCache.close(false);
+
+        dateCache = DateCache.open(mCacheFile);
+        assertNull(dateCache.get(file, 101, 1000, DateSource.EXIF_ORIGINAL));
+        assertNull(dateCache.get(file, 100, 1001, DateSource.EXIF_ORIGINAL));
+        assertNull(dateCache.get(file, 100, 1000, DateSource.FILE_MODIFIED));
+        assertEquals(Long.valueOf(42), dateCache.get(file, 100, 1000, DateSource.EXIF_ORIGINAL));
+    }
+
+    @Test
+    public void testCompleteRunEvictsUnseen() throws IOException {
+        File seen = new File(mTemporaryFolder.getRoot(), "seen.jpg");
+        File gone = new File(mTemporaryFolder.getRoot(), "gone.jpg");
+        DateCache dateCache = DateCache.open(mCacheFile);
+        dateCache.put(seen, 1, 1, DateSource.EXIF_ORIGINAL, 10);
+        dateCache.put(gone, 2, 2, DateSource.EXIF_ORIGINAL, 20);
+        dateCache.close(false);
+
+        dateCache = DateCache.open(mCacheFile);
+        assertEquals(Long.valueOf(10), dateCache.get(seen, 1, 1, DateSource.EXIF_ORIGINAL));
+        dateCache.close(true);
+
+        dateCache = DateCache.open(mCacheFile);
+        assertEquals(Long.valueOf(10), dateCache.get(seen, 1, 1, DateSource.EXIF_ORIGINAL));
+        assertNull(dateCache.get(gone, 2, 2, DateSource.EXIF_ORIGINAL));
+    }
+
+    @Test
+    public void testIncompleteRunKeepsUnseen() throws IOException {
+        File seen = new File(mTemporaryFolder.getRoot(), "seen.jpg");
+        File unseen = new File(mTemporaryFolder.getRoot(), "unseen.jpg");
+        DateCache dateCache = DateCache.open(mCacheFile);
+        dateCache.put(seen, 1, 1, DateSource.EXIF_ORIGINAL, 10);
+        dateCache.put(unseen, 2, 2, DateSource.EXIF_ORIGINAL, 20);
+        dateCache.close(false);
+
+        dateCache = DateCache.open(mCacheFile);
+        dateCache.get(seen, 1, 1, DateSource.EXIF_ORIGINAL);
+        dateCache.close(false);
+
+        dateCache = DateCache.open(mCacheFile);
+        assertEquals(Long.valueOf(20), dateCache.get(unseen, 2, 2, DateSource.EXIF_ORIGINAL));
+    }
+
+    @Test
+    public void testKeyIsAbsolutePath() throws IOException {
+        File absoluteFile = new File("a.jpg").getAbsoluteFile();
+        DateCache dateCache = DateCache.open(mCacheFile);
+        dateCache.put(new File("a.jpg"), 1, 1, DateSource.EXIF_ORIGINAL, 10);
+
+        assertEquals(Long.valueOf(10), dateCache.get(absoluteFile, 1, 1, DateSource.EXIF_ORIGINAL));
+    }
+
+    @Test
+    public void testNoDateIsCached() throws IOException {
+        File file = new File(mTemporaryFolder.getRoot(), "no_exif.jpg");
+        DateCache dateCache = DateCache.open(mCacheFile);
+        dateCache.put(file, 1, 1, DateSource.EXIF_ORIGINAL, DateCache.NO_DATE);
+        dateCache.close(false);
+
+        dateCache = DateCache.open(mCacheFile);
+        assertEquals(Long.valueOf(DateCache.NO_DATE), dateCache.get(file, 1, 1, DateSource.EXIF_ORIGINAL));
+    }
+
+    @Test
+    public void testTruncatedRecordIsDropped() throws IOException {
+        File first = new File(mTemporaryFolder.getRoot(), "first.jpg");
+        File second = new File(mTemporaryFolder.getRoot(), "second.jpg");
+        DateCache dateCache = DateCache.open(mCacheFile);
+        dateCache.put(first, 1, 1, DateSource.EXIF_ORIGINAL, 10);
+        dateCache.close(false);
+        Files.write(mCacheFile.toPath(), new byte[]{0, 20, 'x'}, StandardOpenOption.APPEND);
+
+        dateCache = DateCache.open(mCacheFile);
+        assertEquals(Long.valueOf(10), dateCache.get(first, 1, 1, DateSource.EXIF_ORIGINAL));
+        dateCache.put(second, 2, 2, DateSource.EXIF_ORIGINAL, 20);
+        dateCache.close(false);
+
+        dateCache = DateCache.open(mCacheFile);
+        assertEquals(Long.valueOf(10), dateCache.get(first, 1, 1, DateSource.EXIF_ORIGINAL));
+        assertEquals(Long.valueOf(20), dateCache.get(second, 2, 2, DateSource.EXIF_ORIGINAL));
+    }
+}
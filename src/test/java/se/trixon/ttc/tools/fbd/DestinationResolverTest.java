@@ -0,0 +1,114 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.ttc.tools.fbd;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author Patrik Karlström
+ */
+public class DestinationResolverTest {
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private static Date date(int year, int month, int day, int hour, int minute) {
+        return Date.from(LocalDateTime.of(year, month, day, hour, minute).atZone(ZoneId.systemDefault()).toInstant());
+    }
+
+    @Test
+    public void testDayIsResolvedOnce() throws IOException {
+        DestinationResolver resolver = createResolver("yyyy/MM/dd", false);
+        File dir = resolver.resolve(date(2019, 5, 17, 8, 0));
+        assertEquals(new File(mTemporaryFolder.getRoot(), "2019/05/17"), dir);
+        assertTrue(dir.isDirectory());
+
+        //Neither checked nor created again later in the run
+        assertTrue(dir.delete());
+        assertSame(dir, resolver.resolve(date(2019, 5, 17, 23, 59)));
+        assertFalse(dir.exists());
+
+        File nextDir = resolver.resolve(date(2019, 5, 18, 0, 0));
+        assertEquals(new File(mTemporaryFolder.getRoot(), "2019/05/18"), nextDir);
+        assertTrue(nextDir.isDirectory());
+    }
+
+    @Test
+    public void testDaysShareDirectory() throws IOException {
+        DestinationResolver resolver = createResolver("yyyy/MM", false);
+
+        assertSame(resolver.resolve(date(2019, 5, 1, 12, 0)), resolver.resolve(date(2019, 5, 31, 12, 0)));
+    }
+
+    @Test
+    public void testDryRunCreatesNothing() throws IOException {
+        DestinationResolver resolver = createResolver("yyyy/MM/dd", true);
+
+        assertFalse(resolver.resolve(date(2019, 5, 17, 8, 0)).exists());
+    }
+
+    @Test(expected = FileAlreadyExistsException.class)
+    public void testFileInTheWay() throws IOException {
+        mTemporaryFolder.newFile("2019");
+        createResolver("yyyy", false).resolve(date(2019, 5, 17, 8, 0));
+    }
+
+    @Test
+    public void testIsDayGranular() {
+        assertTrue(DestinationResolver.isDayGranular("yyyy/MM/yyyy-MM-dd"));
+        assertTrue(DestinationResolver.isDayGranular("yyyy/ww/u"));
+        assertTrue(DestinationResolver.isDayGranular("yyyy/'at' dd"));
+        assertFalse(DestinationResolver.isDayGranular("yyyy/MM/yyyy-MM-dd/HH"));
+        assertFalse(DestinationResolver.isDayGranular("yyyy/MM/dd a"));
+        assertFalse(DestinationResolver.isDayGranular("yyyy/'x'mm"));
+    }
+
+    @Test
+    public void testSubDayPattern() throws IOException {
+        DestinationResolver resolver = createResolver("yyyy/MM/dd/HH", false);
+        File morning = resolver.resolve(date(2019, 5, 17, 8, 0));
+        File evening = resolver.resolve(date(2019, 5, 17, 20, 0));
+
+        assertNotEquals(morning, evening);
+        assertEquals(new File(mTemporaryFolder.getRoot(), "2019/05/17/20"), evening);
+        assertSame(morning, resolver.resolve(date(2019, 5, 17, 8, 30)));
+    }
+
+    private DestinationResolver createResolver(String datePattern, boolean dryRun) {
+        Profile profile = new Profile();
+        profile.setOperation(0);
+        profile.setDestDir(mTemporaryFolder.getRoot());
+        profile.setDatePattern(datePattern);
+        profile.setDryRun(dryRun);
+        profile.isValid();
+
+        return new DestinationResolver(profile, new OperationMetrics());
+    }
+}
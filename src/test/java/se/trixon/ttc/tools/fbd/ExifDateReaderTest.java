@@ -0,0 +1,169 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.ttc.tools.fbd;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Date;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author Patrik Karlström
+ */
+public class ExifDateReaderTest {
+
+    private static final String DATE = "2019:05:17 13:45:10";
+    private static final Date EXPECTED = Date.from(LocalDateTime.of(2019, 5, 17, 13, 45, 10).toInstant(ZoneOffset.UTC));
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    /**
+     * A TIFF header with IFD0 pointing to an Exif sub IFD that holds
+     * DateTimeOriginal.
+     */
+    private static byte[] tiff(ByteOrder byteOrder, String date) {
+        ByteBuffer buffer = ByteBuffer.allocate(64).order(byteOrder);
+        buffer.put((byte) (byteOrder == ByteOrder.BIG_ENDIAN ? 'M' : 'I'));
+        buffer.put((byte) (byteOrder == ByteOrder.BIG_ENDIAN ? 'M' : 'I'));
+        buffer.putShort((short) 42);
+        buffer.putInt(8);
+
+        //IFD0 at 8, the sub IFD at 26 and the date at 44
+        buffer.putShort((short) 1);
+        buffer.putShort((short) 0x8769).putShort((short) 4).putInt(1).putInt(26);
+        buffer.putInt(0);
+        buffer.putShort((short) 1);
+        buffer.putShort((short) 0x9003).putShort((short) 2).putInt(20).putInt(44);
+        buffer.putInt(0);
+        buffer.put((date + "\0").getBytes(StandardCharsets.US_ASCII));
+
+        return buffer.array();
+    }
+
+    @Test
+    public void testBigEndianTiff() throws IOException {
+        assertEquals(EXPECTED, read(tiff(ByteOrder.BIG_ENDIAN, DATE)));
+    }
+
+    @Test
+    public void testFillBytesBeforeMarker() throws IOException {
+        Jpeg jpeg = new Jpeg();
+        jpeg.write(0xFF);
+        jpeg.write(0xFF);
+        jpeg.exif(tiff(ByteOrder.BIG_ENDIAN, DATE));
+
+        assertEquals(EXPECTED, read(jpeg.toByteArray()));
+    }
+
+    @Test
+    public void testInvalidDate() throws IOException {
+        Jpeg jpeg = new Jpeg();
+        jpeg.exif(tiff(ByteOrder.LITTLE_ENDIAN, "2019:13:17 13:45:10"));
+
+        assertNull(read(jpeg.toByteArray()));
+    }
+
+    @Test
+    public void testLittleEndianTiff() throws IOException {
+        assertEquals(EXPECTED, read(tiff(ByteOrder.LITTLE_ENDIAN, DATE)));
+    }
+
+    @Test
+    public void testNoExifBeforeScan() throws IOException {
+        Jpeg jpeg = new Jpeg();
+        jpeg.segment(0xE0, "JFIF\0".getBytes(StandardCharsets.US_ASCII));
+        jpeg.segment(0xDA, new byte[4]);
+        jpeg.exif(tiff(ByteOrder.BIG_ENDIAN, DATE));
+
+        assertNull(read(jpeg.toByteArray()));
+    }
+
+    @Test
+    public void testSegmentsBeyondHeaderLimit() throws IOException {
+        Jpeg jpeg = new Jpeg();
+        for (int i = 0; i < 3; i++) {
+            jpeg.segment(0xE2, new byte[60000]);
+        }
+        jpeg.exif(tiff(ByteOrder.BIG_ENDIAN, DATE));
+
+        assertNull(read(jpeg.toByteArray()));
+    }
+
+    @Test
+    public void testSkipsSegmentsBeforeExif() throws IOException {
+        Jpeg jpeg = new Jpeg();
+        jpeg.segment(0xE0, "JFIF\0".getBytes(StandardCharsets.US_ASCII));
+        jpeg.segment(0xE1, "http://ns.adobe.com/xap/1.0/\0".getBytes(StandardCharsets.US_ASCII));
+        jpeg.segment(0xE2, new byte[20000]);
+        jpeg.exif(tiff(ByteOrder.LITTLE_ENDIAN, DATE));
+
+        assertEquals(EXPECTED, read(jpeg.toByteArray()));
+    }
+
+    @Test
+    public void testTruncatedFile() throws IOException {
+        Jpeg jpeg = new Jpeg();
+        jpeg.exif(tiff(ByteOrder.BIG_ENDIAN, DATE));
+        byte[] bytes = jpeg.toByteArray();
+
+        assertNull(read(Arrays.copyOf(bytes, bytes.length - 10)));
+    }
+
+    private Date read(byte[] bytes) throws IOException {
+        File file = mTemporaryFolder.newFile();
+        Files.write(file.toPath(), bytes);
+
+        return ExifDateReader.read(file);
+    }
+
+    private static class Jpeg extends ByteArrayOutputStream {
+
+        Jpeg() {
+            write(0xFF);
+            write(0xD8);
+        }
+
+        void exif(byte[] tiff) {
+            byte[] data = new byte[6 + tiff.length];
+            System.arraycopy("Exif\0\0".getBytes(StandardCharsets.US_ASCII), 0, data, 0, 6);
+            System.arraycopy(tiff, 0, data, 6, tiff.length);
+            segment(0xE1, data);
+        }
+
+        void segment(int marker, byte[] data) {
+            int length = data.length + 2;
+            write(0xFF);
+            write(marker);
+            write(length >> 8);
+            write(length & 0xFF);
+            write(data, 0, data.length);
+        }
+    }
+}
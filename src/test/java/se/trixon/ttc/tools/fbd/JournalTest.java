@@ -0,0 +1,133 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.ttc.tools.fbd;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ *
+ * @author Patrik Karlström
+ */
+public class JournalTest {
+
+    private File mJournalFile;
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws IOException {
+        mJournalFile = new File(mTemporaryFolder.getRoot(), "run.journal");
+    }
+
+    @Test
+    public void testCompleteRunRemovesJournal() throws IOException {
+        Journal journal = Journal.open(mJournalFile, false);
+        journal.done(journal.intent(file("a"), file("b")));
+        journal.close(true);
+
+        assertFalse(mJournalFile.exists());
+    }
+
+    @Test
+    public void testPendingKeptWithoutResume() throws IOException {
+        Journal journal = Journal.open(mJournalFile, false);
+        journal.done(journal.intent(file("a"), file("b")));
+        journal.intent(file("c"), file("d"));
+        journal.close(false);
+
+        journal = Journal.open(mJournalFile, false);
+        assertEquals(1, journal.getPendingEntries().size());
+        assertFalse(journal.isCompleted(file("a")));
+        journal.close(false);
+
+        //Still there until the recovery records it as done
+        journal = Journal.open(mJournalFile, true);
+        assertEquals(1, journal.getPendingEntries().size());
+        assertTrue(journal.isCompleted(file("a")));
+    }
+
+    @Test
+    public void testResume() throws IOException {
+        Journal journal = Journal.open(mJournalFile, false);
+        journal.done(journal.intent(file("a"), file("b")));
+        journal.intent(file("c"), file("d"));
+        journal.close(false);
+
+        journal = Journal.open(mJournalFile, true);
+        List<Journal.Entry> entries = journal.getPendingEntries();
+        assertEquals(1, entries.size());
+        assertEquals(file("c"), entries.get(0).getSourceFile());
+        assertEquals(file("d"), entries.get(0).getDestFile());
+        assertTrue(journal.isCompleted(file("a")));
+        assertFalse(journal.isCompleted(file("c")));
+    }
+
+    @Test
+    public void testTornRecordIsDropped() throws IOException {
+        Journal journal = Journal.open(mJournalFile, false);
+        journal.done(journal.intent(file("a"), file("b")));
+        int sequence = journal.intent(file("c"), file("d"));
+        journal.close(false);
+
+        //An intent cut short in the middle of its source path
+        Files.write(mJournalFile.toPath(), new byte[]{'I', 0, 0, 0, 9, 0, 40, '/'}, StandardOpenOption.APPEND);
+
+        journal = Journal.open(mJournalFile, true);
+        assertEquals(1, journal.getPendingEntries().size());
+        assertEquals(sequence, journal.getPendingEntries().get(0).getSequence());
+        journal.done(sequence);
+        int next = journal.intent(file("e"), file("f"));
+        journal.close(false);
+        assertEquals(sequence + 1, next);
+
+        //Records written after the recovery follow the last complete one
+        journal = Journal.open(mJournalFile, true);
+        List<Journal.Entry> entries = journal.getPendingEntries();
+        assertEquals(1, entries.size());
+        assertEquals(file("e"), entries.get(0).getSourceFile());
+        assertTrue(journal.isCompleted(file("a")));
+        assertTrue(journal.isCompleted(file("c")));
+    }
+
+    @Test
+    public void testWithoutPendingStartsOver() throws IOException {
+        Journal journal = Journal.open(mJournalFile, false);
+        journal.done(journal.intent(file("a"), file("b")));
+        journal.close(false);
+
+        journal = Journal.open(mJournalFile, false);
+        journal.close(false);
+
+        journal = Journal.open(mJournalFile, true);
+        assertTrue(journal.getPendingEntries().isEmpty());
+        assertFalse(journal.isCompleted(file("a")));
+    }
+
+    private File file(String name) {
+        return new File(mTemporaryFolder.getRoot(), name);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2019 Patrik Karlström.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package se.trixon.ttc.tools.fbd;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import se.trixon.ttc.tools.fbd.Operation.Command;
+
+/**
+ *
+ * @author Patrik Karlström
+ */
+public class PlanTest {
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    @Test(expected = IOException.class)
+    public void testInvalidHeader() throws IOException {
+        File planFile = mTemporaryFolder.newFile();
+        Files.write(planFile.toPath(), Arrays.asList("cp\t1\t1\t/a\t/b"), StandardCharsets.UTF_8);
+
+        Plan.open(planFile);
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidLine() throws IOException {
+        File planFile = mTemporaryFolder.newFile();
+        Files.write(planFile.toPath(), Arrays.asList("#filebydate-plan\t1", "cp\t1\t/a\t/b"), StandardCharsets.UTF_8);
+
+        try (Plan.Reader reader = Plan.open(planFile)) {
+            reader.next();
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        File sourceFile = mTemporaryFolder.newFile("source.jpg");
+        Files.write(sourceFile.toPath(), new byte[]{1, 2, 3});
+        String[] destNames = {
+            "plain.jpg",
+            "tab\there.jpg",
+            "line\nbreak.jpg",
+            "carriage\rreturn.jpg",
+            "back\\slash.jpg",
+            "escaped\\t\\n.jpg",
+            "trailing\\"
+        };
+
+        File planFile = new File(mTemporaryFolder.getRoot(), "test.plan");
+        Plan plan = Plan.create(planFile);
+        for (int i = 0; i < destNames.length; i++) {
+            plan.add(i % 2 == 0 ? Command.COPY : Command.MOVE, sourceFile, new File(mTemporaryFolder.getRoot(), destNames[i]));
+        }
+        plan.close();
+        assertEquals(destNames.length, plan.getCount());
+
+        try (Plan.Reader reader = Plan.open(planFile)) {
+            for (int i = 0; i < destNames.length; i++) {
+                Plan.Entry entry = reader.next();
+                assertEquals(i % 2 == 0 ? Command.COPY : Command.MOVE, entry.getCommand());
+                assertEquals(sourceFile.getAbsolutePath(), entry.getSourceFile().getPath());
+                assertEquals(new File(mTemporaryFolder.getRoot(), destNames[i]).getAbsolutePath(), entry.getDestFile().getPath());
+                assertEquals(3, entry.getSize());
+                assertEquals(sourceFile.lastModified(), entry.getLastModified());
+                assertTrue(entry.isUnchanged());
+            }
+            assertNull(reader.next());
+        }
+    }
+}